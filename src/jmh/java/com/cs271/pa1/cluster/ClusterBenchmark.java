@@ -0,0 +1,122 @@
+package com.cs271.pa1.cluster;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.cs271.pa1.dto.TransactionDto;
+
+// One operation is a round of one concurrent transfer per node
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ClusterBenchmark {
+	private static final BigDecimal AMOUNT = new BigDecimal("0.01");
+
+	@Param({ "3", "8", "16" })
+	private int nodes;
+
+	// Upper bound of a uniform per-message delay, 0 disables latency injection
+	@Param({ "0", "2" })
+	private int maxLatencyMs;
+
+	// global | account, see mutex.scope
+	@Param({ "global", "account" })
+	private String scope;
+
+	// low: a pair of accounts per node, high: one pair shared by all
+	@Param({ "low", "high" })
+	private String contention;
+
+	// mutex.coalescing.enabled, global scope only
+	@Param({ "false" })
+	private boolean coalescing;
+
+	private LocalCluster cluster;
+
+	private ExecutorService clients;
+
+	private long rounds;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		Map<String, String> properties = new HashMap<>();
+		if (maxLatencyMs > 0) {
+			properties.put("latency.defaults.mode", "uniform");
+			properties.put("latency.defaults.min-ms", "0");
+			properties.put("latency.defaults.max-ms", String.valueOf(maxLatencyMs));
+		}
+		properties.put("mutex.scope", scope);
+		properties.put("mutex.coalescing.enabled", String.valueOf(coalescing));
+		properties.put("blockchain.accounts",
+				IntStream.range(0, 2 * nodes).mapToObj(this::account).collect(Collectors.joining(",")));
+		cluster = LocalCluster.start(nodes, properties);
+		clients = Executors.newFixedThreadPool(nodes);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		double acquireMs = 0;
+		for (int i = 0; i < nodes; i++) {
+			acquireMs += cluster.registry(i).get("mutex.acquire").timer().mean(TimeUnit.MILLISECONDS);
+		}
+		long transfers = cluster.node(0).getChainHeight();
+		System.out.printf("%nnodes=%d scope=%s contention=%s coalescing=%s mutex.acquire mean=%.3f ms"
+				+ " messages/transfer=%.1f max holders per account=%d%n", nodes, scope, contention, coalescing,
+				acquireMs / nodes,
+				(double) cluster.getNetwork().getMessageCount() / transfers, cluster.getMaxInCriticalSection());
+		clients.shutdownNow();
+		cluster.close();
+	}
+
+	private String account(int index) {
+		return "A" + index;
+	}
+
+	@Benchmark
+	public int round() throws Exception {
+		// Alternate direction so balances stay put however many rounds run
+		boolean forward = rounds++ % 2 == 0;
+		List<Future<Boolean>> results = new ArrayList<>(nodes);
+		for (int i = 0; i < nodes; i++) {
+			int node = i;
+			String first = account("low".equals(contention) ? 2 * node : 0);
+			String second = account("low".equals(contention) ? 2 * node + 1 : 1);
+			TransactionDto transaction = forward ? TransactionDto.createTransaction(first, second, AMOUNT)
+					: TransactionDto.createTransaction(second, first, AMOUNT);
+			results.add(clients.submit(() -> cluster.node(node).initiateTransaction(transaction)));
+		}
+		int committed = 0;
+		for (Future<Boolean> result : results) {
+			if (result.get()) {
+				committed++;
+			}
+		}
+		return committed;
+	}
+}
@@ -0,0 +1,71 @@
+package com.cs271.pa1.dto;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DtoSerializationBenchmark {
+
+	// Same modules as the MVC message converters
+	private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+	private BlockDto block;
+
+	private Request request;
+
+	private byte[] blockJson;
+
+	private byte[] requestJson;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		TransactionDto transaction = TransactionDto.createTransaction("A", "B", new BigDecimal("2.50"));
+		block = BlockDto.builder().operation(transaction).timestamp(System.currentTimeMillis())
+				.currentBlockHash(BlockHash.fromHex("9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08")).build();
+		request = new Request();
+		request.setTimestamp(42);
+		request.setProcessId("8081");
+		blockJson = objectMapper.writeValueAsBytes(block);
+		requestJson = objectMapper.writeValueAsBytes(request);
+	}
+
+	@Benchmark
+	public byte[] serializeBlock() throws Exception {
+		return objectMapper.writeValueAsBytes(block);
+	}
+
+	@Benchmark
+	public BlockDto deserializeBlock() throws Exception {
+		return objectMapper.readValue(blockJson, BlockDto.class);
+	}
+
+	@Benchmark
+	public byte[] serializeRequest() throws Exception {
+		return objectMapper.writeValueAsBytes(request);
+	}
+
+	@Benchmark
+	public Request deserializeRequest() throws Exception {
+		return objectMapper.readValue(requestJson, Request.class);
+	}
+}
@@ -0,0 +1,63 @@
+package com.cs271.pa1.dto;
+
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RequestQueueBenchmark {
+
+	@Param({ "16", "1024", "16384" })
+	private int queueSize;
+
+	private PriorityBlockingQueue<Request> queue;
+
+	private long clock;
+
+	@Setup(Level.Iteration)
+	public void setUp() {
+		queue = new PriorityBlockingQueue<>();
+		for (int i = 0; i < queueSize; i++) {
+			queue.add(request(i, "p" + (i % 64)));
+		}
+		clock = queueSize;
+	}
+
+	private static Request request(long timestamp, String processId) {
+		Request request = new Request();
+		request.setTimestamp(timestamp);
+		request.setProcessId(processId);
+		return request;
+	}
+
+	// Steady state: one request in, the head request out
+	@Benchmark
+	public Request addAndPoll() {
+		long timestamp = clock++ - ThreadLocalRandom.current().nextInt(queueSize);
+		queue.add(request(timestamp, "p" + (timestamp & 63)));
+		return queue.poll();
+	}
+
+	@Benchmark
+	public Request peek() {
+		return queue.peek();
+	}
+}
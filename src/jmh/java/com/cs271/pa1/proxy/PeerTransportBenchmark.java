@@ -0,0 +1,139 @@
+package com.cs271.pa1.proxy;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.web.client.RestTemplate;
+
+import com.cs271.pa1.dto.Request;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+
+// Round trip of one REQUEST: JSON over HTTP versus a TCP frame
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PeerTransportBenchmark {
+
+	private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+	private HttpServer httpServer;
+
+	private RestTemplate restTemplate;
+
+	private String httpUrl;
+
+	private ServerSocketChannel tcpServer;
+
+	private SocketChannel tcpClient;
+
+	private final ByteBuffer ack = ByteBuffer.allocate(1);
+
+	private Request request;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		request = new Request();
+		request.setTimestamp(42);
+		request.setProcessId("8081");
+
+		// Tomcat sets TCP_NODELAY; without it delayed ACKs dominate the HTTP numbers
+		System.setProperty("sun.net.httpserver.nodelay", "true");
+		httpServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		httpServer.createContext("/api/lamport/request", exchange -> {
+			try (InputStream body = exchange.getRequestBody()) {
+				objectMapper.readValue(body, Request.class);
+			}
+			exchange.sendResponseHeaders(200, -1);
+			exchange.close();
+		});
+		httpServer.start();
+		httpUrl = "http://localhost:" + httpServer.getAddress().getPort();
+		restTemplate = new RestTemplateBuilder().build();
+
+		tcpServer = ServerSocketChannel.open().bind(new InetSocketAddress("localhost", 0));
+		Thread acceptor = new Thread(this::serveTcp, "bench-tcp-server");
+		acceptor.setDaemon(true);
+		acceptor.start();
+		tcpClient = SocketChannel.open(tcpServer.getLocalAddress());
+		tcpClient.setOption(StandardSocketOptions.TCP_NODELAY, true);
+	}
+
+	private void serveTcp() {
+		try (SocketChannel channel = tcpServer.accept()) {
+			channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+			ByteBuffer header = ByteBuffer.allocate(PeerFrameCodec.HEADER_SIZE);
+			ByteBuffer payload = ByteBuffer.allocate(256);
+			ByteBuffer reply = ByteBuffer.allocate(1);
+			while (true) {
+				header.clear();
+				readFully(channel, header);
+				payload.clear().limit(header.getInt(0));
+				readFully(channel, payload);
+				payload.flip();
+				payload.get();
+				ByteBuffer body = payload.slice();
+				Request decoded = new Request();
+				decoded.setTimestamp(PeerFrameCodec.decodeTimestamp(body));
+				decoded.setProcessId(PeerFrameCodec.decodeProcessId(body));
+				reply.clear();
+				channel.write(reply);
+			}
+		} catch (IOException e) {
+			// Closed on tear down
+		}
+	}
+
+	private static void readFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer) < 0) {
+				throw new IOException("closed");
+			}
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		httpServer.stop(0);
+		tcpClient.close();
+		tcpServer.close();
+	}
+
+	@Benchmark
+	public void httpJsonRequest() {
+		restTemplate.postForObject(httpUrl + "/api/lamport/request", request, Void.class);
+	}
+
+	@Benchmark
+	public void tcpBinaryRequest() throws IOException {
+		ByteBuffer frame = ByteBuffer.wrap(PeerFrameCodec.encodeRequest(request));
+		while (frame.hasRemaining()) {
+			tcpClient.write(frame);
+		}
+		ack.clear();
+		readFully(tcpClient, ack);
+	}
+}
@@ -0,0 +1,87 @@
+package com.cs271.pa1.service;
+
+import java.math.BigDecimal;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.cs271.pa1.dto.BlockDto;
+import com.cs271.pa1.dto.BlockHash;
+import com.cs271.pa1.dto.TransactionDto;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BlockchainServiceBenchmark {
+
+	private BlockchainService blockchainService;
+
+	private BlockDto block;
+
+	private TransactionDto transaction;
+
+	private TransactionDto reverse;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		blockchainService = new BlockchainService();
+		transaction = TransactionDto.createTransaction("A", "B", new BigDecimal("1.25"));
+		reverse = TransactionDto.createTransaction("B", "A", new BigDecimal("1.25"));
+		block = blockchainService.createBlock(transaction);
+		block.setCurrentBlockHash(blockchainService.generateBlockHash(block));
+	}
+
+	@Benchmark
+	public BlockHash generateBlockHash() {
+		return blockchainService.generateBlockHash(block);
+	}
+
+	// The previous implementation, kept as a baseline for -prof gc comparisons
+	@Benchmark
+	public String legacyStringHash() throws NoSuchAlgorithmException {
+		MessageDigest digest = MessageDigest.getInstance("SHA-256");
+		TransactionDto op = block.operations().get(0);
+		String hashInput = op.getSender() + op.getReceiver() + op.getAmount().toString()
+				+ block.getCurrentBlockHash().toHex();
+		byte[] hashBytes = digest.digest(hashInput.getBytes());
+		StringBuilder hexString = new StringBuilder();
+		for (byte b : hashBytes) {
+			String hex = Integer.toHexString(0xff & b);
+			if (hex.length() == 1) {
+				hexString.append('0');
+			}
+			hexString.append(hex);
+		}
+		return hexString.toString();
+	}
+
+	@Benchmark
+	public BlockDto createBlock() {
+		return blockchainService.createBlock(transaction);
+	}
+
+	// A round trip keeps balances stable across invocations
+	@Benchmark
+	public boolean validateAndUpdateBalances() {
+		boolean valid = blockchainService.validateTransaction(transaction);
+		blockchainService.updateBalances(transaction);
+		valid &= blockchainService.validateTransaction(reverse);
+		blockchainService.updateBalances(reverse);
+		return valid;
+	}
+}
@@ -0,0 +1,67 @@
+package com.cs271.pa1.service;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.cs271.pa1.dto.BlockDto;
+import com.cs271.pa1.dto.TransactionDto;
+import com.cs271.pa1.dto.VerificationResultDto;
+import com.cs271.pa1.store.ChainStore;
+
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+@State(Scope.Benchmark)
+public class ChainVerifierBenchmark {
+
+	@Param({ "1000000" })
+	private int blocks;
+
+	@Param({ "1", "0" })
+	private int parallelism;
+
+	private ChainStore chain;
+
+	private ChainVerifier verifier;
+
+	private final Map<String, BigDecimal> initialBalances = Map.of("A", BigDecimal.TEN, "B", BigDecimal.TEN);
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		chain = new ChainStore();
+		BlockDto previous = null;
+		for (int i = 0; i < blocks; i++) {
+			TransactionDto transaction = i % 2 == 0
+					? TransactionDto.createTransaction("A", "B", BigDecimal.ONE)
+					: TransactionDto.createTransaction("B", "A", BigDecimal.ONE);
+			BlockDto block = BlockDto.builder().operation(transaction).timestamp((long) i)
+					.currentBlockHash(previous == null ? null : BlockHasher.hash(previous)).build();
+			chain.append(block);
+			previous = block;
+		}
+		// 0 means all cores
+		verifier = new ChainVerifier(parallelism == 0 ? ForkJoinPool.commonPool() : new ForkJoinPool(parallelism));
+	}
+
+	@Benchmark
+	public VerificationResultDto verify() {
+		return verifier.verify(chain, initialBalances);
+	}
+}
@@ -0,0 +1,103 @@
+package com.cs271.pa1.service;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.cs271.pa1.dto.LamportMessage;
+import com.cs271.pa1.dto.Request;
+import com.cs271.pa1.proxy.LamportTransport;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LamportMutexServiceBenchmark {
+
+	@Param({ "16", "1024", "16384" })
+	private int queueSize;
+
+	@Param({ "3", "64", "1024" })
+	private int processes;
+
+	private LamportMutexService mutexService;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		mutexService = newMutexService("0", processes);
+
+		// Other processes' requests sit ahead of ours, so the check scans the queue
+		for (int i = 0; i < queueSize; i++) {
+			Request request = new Request();
+			request.setTimestamp(i);
+			request.setProcessId(String.valueOf(1 + i % (processes - 1)));
+			mutexService.receiveRequest(request);
+		}
+		mutexService.requestMutex();
+		long replyTimestamp = mutexService.currentRequest().getTimestamp() + 1;
+		for (int p = 1; p < processes; p++) {
+			mutexService.receiveReply(String.valueOf(p), replyTimestamp);
+		}
+	}
+
+	static LamportMutexService newMutexService(String processId, int processes) {
+		LamportMutexService mutexService = new LamportMutexService();
+		ReflectionTestUtils.setField(mutexService, "processId", processId);
+		ReflectionTestUtils.setField(mutexService, "lamportProxy", new NoopLamportTransport());
+		ReflectionTestUtils.setField(mutexService, "meterRegistry", new SimpleMeterRegistry());
+		for (int p = 0; p < processes; p++) {
+			if (!String.valueOf(p).equals(processId)) {
+				mutexService.registerProcess(String.valueOf(p), "http://localhost:" + (8080 + p));
+			}
+		}
+		return mutexService;
+	}
+
+	@Benchmark
+	public boolean canEnterCriticalSection() {
+		return mutexService.canEnterCriticalSection();
+	}
+
+	// Insert and remove-by-process against a full queue
+	@Benchmark
+	public boolean receiveRequestAndRelease() {
+		Request request = Request.of(queueSize, String.valueOf(processes));
+		mutexService.receiveRequest(request);
+		mutexService.receiveRelease(request.getProcessId(), queueSize + 1);
+		return mutexService.isInCriticalSection();
+	}
+
+	static class NoopLamportTransport implements LamportTransport {
+		@Override
+		public void sendRequest(String targetUrl, Request request) {
+		}
+
+		@Override
+		public void sendReply(String targetUrl, String processId, long timestamp) {
+		}
+
+		@Override
+		public void sendRelease(String targetUrl, String processId, long timestamp) {
+		}
+
+		@Override
+		public void sendMessage(String targetUrl, LamportMessage message) {
+		}
+	}
+}
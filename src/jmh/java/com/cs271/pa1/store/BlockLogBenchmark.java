@@ -0,0 +1,155 @@
+package com.cs271.pa1.store;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.cs271.pa1.dto.BlockDto;
+import com.cs271.pa1.dto.BlockHash;
+import com.cs271.pa1.dto.TransactionDto;
+
+@Fork(1)
+@State(Scope.Benchmark)
+public class BlockLogBenchmark {
+
+	private static final int BLOCKS = 1_000_000;
+
+	private Path directory;
+
+	private BlockDto block;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("block-log-bench");
+		block = BlockDto.builder().operation(TransactionDto.createTransaction("A", "B", new BigDecimal("1.25")))
+				.timestamp(System.currentTimeMillis())
+				.currentBlockHash(BlockHash.fromHex("9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08")).build();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		try (Stream<Path> files = Files.walk(directory)) {
+			files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+		}
+	}
+
+	private Path freshDirectory() throws IOException {
+		return Files.createTempDirectory(directory, "run");
+	}
+
+	// Unsynced appends measure encoding and write cost per block
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	@Warmup(iterations = 1)
+	@Measurement(iterations = 3)
+	@OperationsPerInvocation(BLOCKS)
+	public long appendMillionBlocks() throws IOException {
+		BlockLog blockLog = new BlockLog(freshDirectory(), 64L << 20, false, 0);
+		blockLog.open();
+		blockLog.replay(b -> {
+		});
+		for (int i = 0; i < BLOCKS; i++) {
+			blockLog.append(block);
+		}
+		blockLog.close();
+		return blockLog.size();
+	}
+
+	@State(Scope.Benchmark)
+	public static class PopulatedLog {
+		private Path directory;
+
+		@Setup(Level.Trial)
+		public void setUp() throws IOException {
+			directory = Files.createTempDirectory("block-log-recovery");
+			BlockDto block = BlockDto.builder()
+					.operation(TransactionDto.createTransaction("A", "B", new BigDecimal("1.25")))
+					.timestamp(System.currentTimeMillis())
+					.currentBlockHash(BlockHash.fromHex("9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08")).build();
+			BlockLog blockLog = new BlockLog(directory, 64L << 20, false, 0);
+			blockLog.open();
+			blockLog.replay(b -> {
+			});
+			for (int i = 0; i < BLOCKS; i++) {
+				blockLog.append(block);
+			}
+			blockLog.close();
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() throws IOException {
+			try (Stream<Path> files = Files.walk(directory)) {
+				files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+			}
+		}
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	@Warmup(iterations = 1)
+	@Measurement(iterations = 3)
+	public long recoverMillionBlocks(PopulatedLog log, Blackhole blackhole) {
+		BlockLog blockLog = new BlockLog(log.directory, 64L << 20, false, 0);
+		blockLog.open();
+		long recovered = blockLog.replay(blackhole::consume);
+		blockLog.close();
+		return recovered;
+	}
+
+	// Group fsync: concurrent writers share one force() per flush interval
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	@Warmup(iterations = 2, time = 1)
+	@Measurement(iterations = 3, time = 2)
+	@Threads(8)
+	public void syncedAppend(SyncedLog log) {
+		log.blockLog.append(block);
+	}
+
+	@State(Scope.Benchmark)
+	public static class SyncedLog {
+		private Path directory;
+
+		private BlockLog blockLog;
+
+		@Setup(Level.Trial)
+		public void setUp() throws IOException {
+			directory = Files.createTempDirectory("block-log-synced");
+			blockLog = new BlockLog(directory, 64L << 20, true, 1);
+			blockLog.open();
+			blockLog.replay(b -> {
+			});
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() throws IOException {
+			blockLog.close();
+			try (Stream<Path> files = Files.walk(directory)) {
+				files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+			}
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package com.cs271.pa1.store;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Validate-and-apply of one transfer between random accounts
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+@State(Scope.Thread)
+public class LedgerBenchmark {
+
+	@Param({ "3", "1000000" })
+	private int accounts;
+
+	private String[] names;
+
+	private final BigDecimal amount = new BigDecimal("0.25");
+
+	private Ledger ledger;
+
+	private Map<String, BigDecimal> balanceTable;
+
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		names = new String[accounts];
+		ledger = new Ledger();
+		balanceTable = new ConcurrentHashMap<>();
+		for (int i = 0; i < accounts; i++) {
+			names[i] = "account-" + i;
+			ledger.set(ledger.accountId(names[i]), Ledger.toMinorUnits(BigDecimal.TEN));
+			balanceTable.put(names[i], BigDecimal.TEN);
+		}
+	}
+
+	private int nextIndex() {
+		next = (next + 7919) % accounts;
+		return next;
+	}
+
+	@Benchmark
+	public boolean ledgerTransfer() {
+		String sender = names[nextIndex()];
+		String receiver = names[nextIndex()];
+		long minorUnits = Ledger.toMinorUnits(amount);
+		int from = ledger.findAccount(sender);
+		if (from < 0 || ledger.balance(from) < minorUnits) {
+			return false;
+		}
+		ledger.transfer(from, ledger.accountId(receiver), minorUnits);
+		return true;
+	}
+
+	// The previous ConcurrentHashMap<String, BigDecimal> balance table
+	@Benchmark
+	public boolean bigDecimalMapTransfer() {
+		String sender = names[nextIndex()];
+		String receiver = names[nextIndex()];
+		BigDecimal senderBalance = balanceTable.getOrDefault(sender, BigDecimal.ZERO);
+		if (senderBalance.compareTo(amount) < 0 || amount.compareTo(BigDecimal.ZERO) <= 0) {
+			return false;
+		}
+		balanceTable.put(sender, balanceTable.get(sender).subtract(amount));
+		balanceTable.merge(receiver, amount, BigDecimal::add);
+		return true;
+	}
+}
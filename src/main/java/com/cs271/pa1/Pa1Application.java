@@ -3,22 +3,32 @@ package com.cs271.pa1;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.ConfigurableApplicationContext;
-import org.springframework.scheduling.annotation.EnableAsync;
 
+import com.cs271.pa1.dto.WorkloadReportDto;
+import com.cs271.pa1.service.LoadGeneratorService;
+import com.cs271.pa1.service.WorkloadProperties;
 import com.cs271.pa1.ui.ClientUserInterface;
 
 @SpringBootApplication
-@EnableAsync
 public class Pa1Application {
 	public static void main(String[] args) {
 		if (args.length < 1) {
-			System.out.println("Usage: java -jar app.jar <ClientName>");
+			System.out.println("Usage: java -jar app.jar <ClientName> [--load.autostart=true --load.<option>=...]");
 			System.exit(1);
 		}
 
 		String clientName = args[0];
 
 		ConfigurableApplicationContext context = SpringApplication.run(Pa1Application.class, args);
+
+		// Run the configured workload instead of the menu
+		WorkloadProperties workload = context.getBean(WorkloadProperties.class);
+		if (workload.isAutostart()) {
+			WorkloadReportDto report = context.getBean(LoadGeneratorService.class).run(workload);
+			System.out.println(LoadGeneratorService.summary(report));
+			return;
+		}
+
 		ClientUserInterface userInterface = context.getBean(ClientUserInterface.class);
 
 		userInterface.start(clientName);
@@ -0,0 +1,87 @@
+package com.cs271.pa1.controller;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.cs271.pa1.dto.BlockDto;
+import com.cs271.pa1.dto.BlockHash;
+import com.cs271.pa1.dto.ChainPageDto;
+import com.cs271.pa1.dto.CheckpointDto;
+import com.cs271.pa1.dto.InclusionProofDto;
+import com.cs271.pa1.dto.VerificationResultDto;
+import com.cs271.pa1.service.BlockchainService;
+
+@RestController
+@RequestMapping("/api/chain")
+public class ChainController {
+	private static final int MAX_PAGE_SIZE = 1000;
+
+	@Autowired
+	private BlockchainService blockchainService;
+
+	@GetMapping("/blocks")
+	public ChainPageDto getBlocks(@RequestParam(defaultValue = "0") int from,
+			@RequestParam(defaultValue = "100") int limit) {
+		int pageSize = Math.min(limit, MAX_PAGE_SIZE);
+		return ChainPageDto.builder().total(blockchainService.getChainHeight()).offset(from).limit(pageSize)
+				.blocks(blockchainService.getBlocks(from, pageSize)).build();
+	}
+
+	// Blocks from the given height as a gzip stream
+	@GetMapping(value = "/blocks/stream", produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+	public StreamingResponseBody streamBlocks(@RequestParam(defaultValue = "0") int from) {
+		return out -> blockchainService.streamBlocks(from, out);
+	}
+
+	@GetMapping("/blocks/{height}")
+	public ResponseEntity<BlockDto> getBlockByHeight(@PathVariable int height) {
+		return ResponseEntity.of(blockchainService.getBlockByHeight(height));
+	}
+
+	@GetMapping("/blocks/hash/{hash}")
+	public ResponseEntity<BlockDto> getBlockByHash(@PathVariable String hash) {
+		BlockHash blockHash;
+		try {
+			blockHash = BlockHash.fromHex(hash);
+		} catch (IllegalArgumentException e) {
+			return ResponseEntity.badRequest().build();
+		}
+		return ResponseEntity.of(blockchainService.getBlockByHash(blockHash));
+	}
+
+	@GetMapping("/transactions/{transactionId}")
+	public ResponseEntity<BlockDto> getBlockByTransactionId(@PathVariable String transactionId) {
+		return ResponseEntity.of(blockchainService.getBlockByTransactionId(transactionId));
+	}
+
+	// Inclusion proof for a transaction
+	@GetMapping("/transactions/{transactionId}/proof")
+	public ResponseEntity<InclusionProofDto> getInclusionProof(@PathVariable String transactionId) {
+		return ResponseEntity.of(blockchainService.getInclusionProof(transactionId));
+	}
+
+	@GetMapping("/checkpoint")
+	public ResponseEntity<CheckpointDto> getLatestCheckpoint() {
+		return ResponseEntity.of(blockchainService.getLatestCheckpoint());
+	}
+
+	@GetMapping("/verify")
+	public VerificationResultDto verify() {
+		return blockchainService.verifyChain();
+	}
+
+	@GetMapping("/accounts/{account}/transactions")
+	public ChainPageDto getAccountHistory(@PathVariable String account,
+			@RequestParam(defaultValue = "0") int offset, @RequestParam(defaultValue = "100") int limit) {
+		int pageSize = Math.min(limit, MAX_PAGE_SIZE);
+		return ChainPageDto.builder().total(blockchainService.getAccountHistorySize(account)).offset(offset)
+				.limit(pageSize).blocks(blockchainService.getAccountHistory(account, offset, pageSize)).build();
+	}
+}
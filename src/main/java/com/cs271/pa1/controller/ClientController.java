@@ -1,16 +1,18 @@
 package com.cs271.pa1.controller;
 
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CompletableFuture;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.cs271.pa1.dto.BlockDto;
 import com.cs271.pa1.service.BlockchainService;
+import com.cs271.pa1.service.LatencyInjectionService;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -22,17 +24,21 @@ public class ClientController {
 	@Autowired
 	private BlockchainService blockchainService;
 
+	@Autowired
+	private LatencyInjectionService latencyService;
+
 	@PostMapping("/message")
-	public ResponseEntity<String> processMessage(@RequestBody BlockDto blockDto) throws InterruptedException {
+	public CompletableFuture<ResponseEntity<String>> processMessage(@RequestBody BlockDto blockDto,
+			@RequestHeader(value = "X-Process-Id", required = false) String processId) {
 		log.info("Incoming broadcast message {}", blockDto);
-		TimeUnit.SECONDS.sleep(3);
-		try {
-			blockchainService.receiveBlock(blockDto);
-			return ResponseEntity.ok("SUCCESS");
-		} catch (Exception error) {
-			return ResponseEntity.status(500).body(error.getMessage());
-		}
-
+		return latencyService.deliver("block", processId, () -> {
+			try {
+				blockchainService.receiveBlock(blockDto);
+				return ResponseEntity.ok("SUCCESS");
+			} catch (Exception error) {
+				return ResponseEntity.status(500).body(error.getMessage());
+			}
+		});
 	}
 
-}
\ No newline at end of file
+}
@@ -1,8 +1,7 @@
 package com.cs271.pa1.controller;
 
-import java.util.concurrent.TimeUnit;
-
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
@@ -10,34 +9,44 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.cs271.pa1.dto.LamportMessage;
 import com.cs271.pa1.dto.Request;
 import com.cs271.pa1.service.LamportMutexService;
+import com.cs271.pa1.service.LatencyInjectionService;
 
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
 @RestController
 @RequestMapping("/api/lamport")
+@ConditionalOnProperty(name = "mutex.algorithm", havingValue = "lamport", matchIfMissing = true)
 public class LamportController {
 	@Autowired
 	private LamportMutexService lamportService;
 
+	@Autowired
+	private LatencyInjectionService latencyService;
+
+	// Handlers acknowledge once a message is queued for delivery, not delivered
 	@PostMapping("/request")
-	public void receiveRequest(@RequestBody Request request) throws InterruptedException {
-		TimeUnit.SECONDS.sleep(3);
-		lamportService.receiveRequest(request);
+	public void receiveRequest(@RequestBody Request request) {
+		latencyService.deliver("request", request.getProcessId(), () -> lamportService.receiveRequest(request));
 	}
 
 	@PostMapping("/reply/{processId}")
-	public void receiveReply(@PathVariable String processId, @RequestParam long timestamp) throws InterruptedException {
-		TimeUnit.SECONDS.sleep(3);
-		lamportService.receiveReply(processId, timestamp);
+	public void receiveReply(@PathVariable String processId, @RequestParam long timestamp) {
+		latencyService.deliver("reply", processId, () -> lamportService.receiveReply(processId, timestamp));
 	}
 
 	@PostMapping("/release")
-	public void receiveRelease(@RequestParam String processId, @RequestParam long timestamp)
-			throws InterruptedException {
-		TimeUnit.SECONDS.sleep(3);
-		lamportService.receiveRelease(processId, timestamp);
+	public void receiveRelease(@RequestParam String processId, @RequestParam long timestamp) {
+		latencyService.deliver("release", processId,
+				() -> lamportService.receiveRelease(processId, timestamp));
+	}
+
+	@PostMapping("/message")
+	public void receiveMessage(@RequestBody LamportMessage message) {
+		latencyService.deliver("message", message.getProcessId(),
+				() -> lamportService.receiveMessage(message));
 	}
-}
\ No newline at end of file
+}
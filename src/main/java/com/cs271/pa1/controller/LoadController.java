@@ -0,0 +1,54 @@
+package com.cs271.pa1.controller;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import com.cs271.pa1.dto.WorkloadReportDto;
+import com.cs271.pa1.service.LoadGeneratorService;
+import com.cs271.pa1.service.WorkloadProperties;
+
+@RestController
+@RequestMapping("/api/load")
+public class LoadController {
+	// Headroom over warm-up plus measurement for the start delay and in-flight transfers
+	private static final long TIMEOUT_SLACK_MS = TimeUnit.MINUTES.toMillis(2);
+
+	@Autowired
+	private LoadGeneratorService loadGeneratorService;
+
+	// Runs the workload on this node only
+	@PostMapping("/run")
+	public DeferredResult<WorkloadReportDto> run(@RequestBody WorkloadProperties workload) {
+		return submit(workload, () -> loadGeneratorService.run(workload));
+	}
+
+	// Runs the workload on every node at the same start time and returns the merged report
+	@PostMapping("/cluster")
+	public DeferredResult<WorkloadReportDto> runCluster(@RequestBody WorkloadProperties workload) {
+		return submit(workload, () -> loadGeneratorService.runCluster(workload));
+	}
+
+	// Runs outlast the default async request timeout, so each gets its own
+	private DeferredResult<WorkloadReportDto> submit(WorkloadProperties workload,
+			Supplier<WorkloadReportDto> task) {
+		long timeoutMs = TimeUnit.SECONDS.toMillis(workload.getWarmupSeconds() + workload.getDurationSeconds())
+				+ TIMEOUT_SLACK_MS;
+		DeferredResult<WorkloadReportDto> result = new DeferredResult<>(timeoutMs);
+		CompletableFuture.supplyAsync(task).whenComplete((report, error) -> {
+			if (error != null) {
+				result.setErrorResult(error);
+			} else {
+				result.setResult(report);
+			}
+		});
+		return result;
+	}
+}
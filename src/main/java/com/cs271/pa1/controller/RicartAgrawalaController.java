@@ -0,0 +1,40 @@
+package com.cs271.pa1.controller;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.cs271.pa1.dto.Request;
+import com.cs271.pa1.service.LatencyInjectionService;
+import com.cs271.pa1.service.RicartAgrawalaMutexService;
+
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+@RestController
+@RequestMapping("/api/ricart-agrawala")
+@ConditionalOnProperty(name = "mutex.algorithm", havingValue = "ricart-agrawala")
+public class RicartAgrawalaController {
+	@Autowired
+	private RicartAgrawalaMutexService mutexService;
+
+	@Autowired
+	private LatencyInjectionService latencyService;
+
+	@PostMapping("/request")
+	public void receiveRequest(@RequestBody Request request) {
+		latencyService.deliver("request", request.getProcessId(), () -> mutexService.receiveRequest(request));
+	}
+
+	@PostMapping("/reply/{processId}")
+	public void receiveReply(@PathVariable String processId, @RequestParam long timestamp,
+			@RequestParam long requestTimestamp) {
+		latencyService.deliver("reply", processId,
+				() -> mutexService.receiveReply(processId, timestamp, requestTimestamp));
+	}
+}
@@ -0,0 +1,40 @@
+package com.cs271.pa1.controller;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.cs271.pa1.dto.TokenDto;
+import com.cs271.pa1.service.LatencyInjectionService;
+import com.cs271.pa1.service.SuzukiKasamiMutexService;
+
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+@RestController
+@RequestMapping("/api/suzuki-kasami")
+@ConditionalOnProperty(name = "mutex.algorithm", havingValue = "suzuki-kasami")
+public class SuzukiKasamiController {
+	@Autowired
+	private SuzukiKasamiMutexService mutexService;
+
+	@Autowired
+	private LatencyInjectionService latencyService;
+
+	@PostMapping("/request")
+	public void receiveRequest(@RequestParam String processId, @RequestParam long sequenceNumber) {
+		latencyService.deliver("request", processId,
+				() -> mutexService.receiveRequest(processId, sequenceNumber));
+	}
+
+	@PostMapping("/token")
+	public void receiveToken(@RequestBody TokenDto token,
+			@RequestHeader(value = "X-Process-Id", required = false) String processId) {
+		latencyService.deliver("token", processId, () -> mutexService.receiveToken(token));
+	}
+}
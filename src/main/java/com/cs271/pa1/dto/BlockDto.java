@@ -1,12 +1,40 @@
 package com.cs271.pa1.dto;
 
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
 import lombok.Builder;
 import lombok.Data;
 
 @Data
 @Builder
 public class BlockDto {
+	// Blocks written before batching carry a single operation, hashed in full
+	@JsonInclude(Include.NON_NULL)
 	private TransactionDto operation;
-	private String currentBlockHash;
+	// Batched transactions under a Merkle root
+	@JsonInclude(Include.NON_NULL)
+	private List<TransactionDto> transactions;
+	@JsonInclude(Include.NON_NULL)
+	private BlockHash merkleRoot;
+	private BlockHash currentBlockHash;
 	private Long timestamp;
-}
\ No newline at end of file
+	// Chain position, global scope only
+	@JsonInclude(Include.NON_NULL)
+	private Integer height;
+	// Account scope: the lock request and what it merges behind
+	@JsonInclude(Include.NON_NULL)
+	private Request lock;
+	@JsonInclude(Include.NON_NULL)
+	private List<Request> dependencies;
+
+	// The block's transactions in either form
+	public List<TransactionDto> operations() {
+		if (transactions != null) {
+			return transactions;
+		}
+		return operation == null ? List.of() : List.of(operation);
+	}
+}
@@ -0,0 +1,79 @@
+package com.cs271.pa1.dto;
+
+import java.nio.ByteBuffer;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+
+// A SHA-256 value held as four longs; hex only when crossing the API boundary
+public record BlockHash(long h0, long h1, long h2, long h3) {
+	public static final int BYTES = 32;
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	public static BlockHash fromBytes(byte[] bytes, int offset) {
+		return new BlockHash(readLong(bytes, offset), readLong(bytes, offset + 8), readLong(bytes, offset + 16),
+				readLong(bytes, offset + 24));
+	}
+
+	private static long readLong(byte[] bytes, int offset) {
+		long value = 0;
+		for (int i = offset; i < offset + 8; i++) {
+			value = (value << 8) | (bytes[i] & 0xff);
+		}
+		return value;
+	}
+
+	public static BlockHash read(ByteBuffer buffer) {
+		return new BlockHash(buffer.getLong(), buffer.getLong(), buffer.getLong(), buffer.getLong());
+	}
+
+	@JsonCreator
+	public static BlockHash fromHex(String hex) {
+		if (hex == null) {
+			return null;
+		}
+		if (hex.length() != BYTES * 2) {
+			throw new IllegalArgumentException("Expected 64 hex characters: " + hex);
+		}
+		return new BlockHash(parseLong(hex, 0), parseLong(hex, 16), parseLong(hex, 32), parseLong(hex, 48));
+	}
+
+	private static long parseLong(String hex, int offset) {
+		long value = 0;
+		for (int i = offset; i < offset + 16; i++) {
+			int digit = Character.digit(hex.charAt(i), 16);
+			if (digit < 0) {
+				throw new IllegalArgumentException("Invalid hex character in " + hex);
+			}
+			value = (value << 4) | digit;
+		}
+		return value;
+	}
+
+	public void write(ByteBuffer buffer) {
+		buffer.putLong(h0).putLong(h1).putLong(h2).putLong(h3);
+	}
+
+	@JsonValue
+	public String toHex() {
+		char[] chars = new char[BYTES * 2];
+		appendHex(chars, 0, h0);
+		appendHex(chars, 16, h1);
+		appendHex(chars, 32, h2);
+		appendHex(chars, 48, h3);
+		return new String(chars);
+	}
+
+	private static void appendHex(char[] chars, int offset, long value) {
+		for (int i = 15; i >= 0; i--) {
+			chars[offset + i] = HEX[(int) (value & 0xf)];
+			value >>>= 4;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return toHex();
+	}
+}
@@ -0,0 +1,15 @@
+package com.cs271.pa1.dto;
+
+import java.util.List;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class ChainPageDto {
+	private int total;
+	private int offset;
+	private int limit;
+	private List<BlockDto> blocks;
+}
@@ -0,0 +1,24 @@
+package com.cs271.pa1.dto;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CheckpointDto {
+	// Number of blocks applied to the balances
+	private int height;
+	// Hash of the block at height - 1
+	private BlockHash headHash;
+	private Long timestamp;
+	private Map<String, BigDecimal> balances;
+	// The cold tier as of this height, once a chunk has been spilled
+	private ColdTierDto cold;
+}
@@ -0,0 +1,24 @@
+package com.cs271.pa1.dto;
+
+import java.util.Map;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ColdTierDto {
+	// Chunks spilled, so the blocks below chunks * CHUNK_SIZE are on disk
+	private int chunks;
+	// Hash of the last spilled block, which the first block after it links to
+	private BlockHash boundaryHash;
+	// Keys in the mapped hash and transaction id indexes
+	private long hashKeys;
+	private long transactionKeys;
+	// Heights each account appears at in the spilled chunks
+	private Map<String, Integer> accountHeights;
+}
@@ -0,0 +1,35 @@
+package com.cs271.pa1.dto;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Merkle path from a transaction to its block header, see MerkleTree
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class InclusionProofDto {
+	private TransactionDto transaction;
+	private int height;
+	private int index;
+	private int transactionCount;
+	private BlockHash leafHash;
+	private List<Step> path;
+	private BlockHash merkleRoot;
+	private Long blockTimestamp;
+	private BlockHash previousBlockHash;
+	private BlockHash blockHash;
+
+	// A sibling hash on the way to the root; left when it is hashed before the running hash
+	@Data
+	@NoArgsConstructor
+	@AllArgsConstructor
+	public static class Step {
+		private BlockHash hash;
+		private boolean left;
+	}
+}
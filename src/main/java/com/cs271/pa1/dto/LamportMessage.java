@@ -0,0 +1,22 @@
+package com.cs271.pa1.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.Data;
+
+// Everything queued for one peer, as one message
+@Data
+public class LamportMessage {
+	private String processId;
+	// Sender's clock when the message was sent, also the reply timestamp
+	private long timestamp;
+	// Blocks committed in the critical section the release ends
+	private List<BlockDto> blocks = new ArrayList<>();
+	// Release timestamp, null when the message carries no release
+	private Long release;
+	// Sender's chain height at the release, when releases carry it
+	private Integer releaseHeight;
+	private Request request;
+	private boolean reply;
+}
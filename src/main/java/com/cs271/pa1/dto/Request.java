@@ -1,11 +1,30 @@
 package com.cs271.pa1.dto;
 
+import java.util.Collections;
+import java.util.List;
+
 import lombok.Data;
 
 @Data
 public class Request implements Comparable<Request> {
 	private long timestamp;
 	private String processId;
+	// Accounts this request locks; null or empty locks the whole ledger
+	private List<String> resources;
+
+	public static Request of(long timestamp, String processId) {
+		Request request = new Request();
+		request.setTimestamp(timestamp);
+		request.setProcessId(processId);
+		return request;
+	}
+
+	public boolean conflictsWith(Request other) {
+		if (resources == null || resources.isEmpty() || other.resources == null || other.resources.isEmpty()) {
+			return true;
+		}
+		return !Collections.disjoint(resources, other.resources);
+	}
 
 	@Override
 	public int compareTo(Request other) {
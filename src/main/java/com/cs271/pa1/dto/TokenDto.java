@@ -0,0 +1,14 @@
+package com.cs271.pa1.dto;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import lombok.Data;
+
+@Data
+public class TokenDto {
+	private Map<String, Long> lastRequestNumbers = new HashMap<>();
+	private List<String> queue = new ArrayList<>();
+}
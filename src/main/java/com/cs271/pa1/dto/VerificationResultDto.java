@@ -0,0 +1,18 @@
+package com.cs271.pa1.dto;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class VerificationResultDto {
+	private boolean valid;
+	private int height;
+	private long durationMs;
+	private List<String> errors;
+	private Map<String, BigDecimal> balances;
+}
@@ -0,0 +1,31 @@
+package com.cs271.pa1.dto;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class WorkloadReportDto {
+	private String processId;
+	private String mode;
+	private long submitted;
+	private long committed;
+	private long rejected;
+	private long durationMs;
+	// Committed transfers per second over the measurement phase
+	private double throughput;
+	private double p50Ms;
+	private double p99Ms;
+	private double p999Ms;
+	private double maxMs;
+	// Compressed HdrHistogram of measured latencies in nanoseconds, base64, so reports can be merged
+	private String histogram;
+	// Per-node reports of a coordinated run
+	private List<WorkloadReportDto> nodes;
+}
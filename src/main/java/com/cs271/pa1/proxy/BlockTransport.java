@@ -0,0 +1,13 @@
+package com.cs271.pa1.proxy;
+
+import java.util.function.Consumer;
+
+import com.cs271.pa1.dto.BlockDto;
+
+public interface BlockTransport {
+
+	void broadcastBlock(BlockDto block);
+
+	// Streams the peer's blocks from fromHeight up to its head into sink, returning the count
+	int fetchBlocks(int port, int fromHeight, Consumer<BlockDto> sink);
+}
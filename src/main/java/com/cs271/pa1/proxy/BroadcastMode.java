@@ -0,0 +1,22 @@
+package com.cs271.pa1.proxy;
+
+public enum BroadcastMode {
+	// Wait for every peer to apply the block
+	ALL,
+	// Wait for a majority of the cluster, counting this node
+	QUORUM,
+	// Return immediately and retry failed peers in the background
+	ASYNC;
+
+	int requiredAcks(int peers) {
+		switch (this) {
+		case ALL:
+			return peers;
+		case QUORUM:
+			// Majority of peers + this node, minus this node
+			return (peers + 1) / 2;
+		default:
+			return 0;
+		}
+	}
+}
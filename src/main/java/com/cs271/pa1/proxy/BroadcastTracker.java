@@ -0,0 +1,48 @@
+package com.cs271.pa1.proxy;
+
+// Counts peer acknowledgements until the required number arrive or can no longer arrive
+class BroadcastTracker {
+	private final int peers;
+	private final int required;
+	private int acks;
+	private int failures;
+
+	BroadcastTracker(int peers, int required) {
+		this.peers = peers;
+		this.required = required;
+	}
+
+	synchronized int getAcks() {
+		return acks;
+	}
+
+	int getRequired() {
+		return required;
+	}
+
+	synchronized void complete(boolean success) {
+		if (success) {
+			acks++;
+		} else {
+			failures++;
+		}
+		notifyAll();
+	}
+
+	synchronized boolean await(long timeoutMs) {
+		long deadline = System.currentTimeMillis() + timeoutMs;
+		while (acks < required && peers - failures >= required) {
+			long remaining = deadline - System.currentTimeMillis();
+			if (remaining <= 0) {
+				return false;
+			}
+			try {
+				wait(remaining);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+		return acks >= required;
+	}
+}
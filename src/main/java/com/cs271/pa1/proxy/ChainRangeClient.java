@@ -0,0 +1,23 @@
+package com.cs271.pa1.proxy;
+
+import java.util.function.Consumer;
+
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import com.cs271.pa1.dto.BlockDto;
+import com.cs271.pa1.store.BlockStreamCodec;
+
+// Fetches a range of a peer's chain in one streaming request instead of a call per block
+@Component
+public class ChainRangeClient {
+	private final RestTemplate restTemplate = new RestTemplateBuilder().build();
+
+	public int fetchBlocks(String targetUrl, int fromHeight, Consumer<BlockDto> sink) {
+		Integer count = restTemplate.execute(targetUrl + "/api/chain/blocks/stream?from=" + fromHeight,
+				HttpMethod.GET, null, response -> BlockStreamCodec.read(response.getBody(), sink));
+		return count == null ? 0 : count;
+	}
+}
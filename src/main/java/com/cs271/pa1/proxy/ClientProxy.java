@@ -1,8 +1,18 @@
 package com.cs271.pa1.proxy;
 
+import java.time.Duration;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
@@ -14,29 +24,125 @@ import org.springframework.web.client.RestTemplate;
 import com.cs271.pa1.dto.BlockDto;
 import com.cs271.pa1.service.ClientPortService;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
 @Component
-public class ClientProxy {
+@ConditionalOnProperty(name = "peer.transport", havingValue = "http", matchIfMissing = true)
+public class ClientProxy implements BlockTransport {
 
-	private RestTemplate restTemplate = new RestTemplateBuilder().build();
+	private RestTemplate restTemplate;
 
 	@Autowired
 	private ClientPortService clientPortService;
 
+	@Autowired
+	private PeerMetrics peerMetrics;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@Autowired
+	private ChainRangeClient chainRangeClient;
+
+	private Timer fanoutTimer;
+
+	@Value("${server.port}")
+	private String processId;
+
+	@Value("${broadcast.mode:all}")
+	private String mode;
+
+	@Value("${broadcast.timeout-ms:10000}")
+	private long timeoutMs;
+
+	@Value("${broadcast.retry.max-attempts:5}")
+	private int maxAttempts;
+
+	@Value("${broadcast.retry.backoff-ms:500}")
+	private long backoffMs;
+
+	private BroadcastMode broadcastMode;
+
+	private final ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory() {
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "broadcast-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	@PostConstruct
+	public void init() {
+		broadcastMode = BroadcastMode.valueOf(mode.trim().toUpperCase());
+		fanoutTimer = Timer.builder("broadcast.fanout").description("Time until the broadcast mode is satisfied")
+				.tag("mode", broadcastMode.name().toLowerCase()).publishPercentileHistogram().register(meterRegistry);
+		restTemplate = new RestTemplateBuilder().connectTimeout(Duration.ofMillis(timeoutMs))
+				.readTimeout(Duration.ofMillis(timeoutMs)).build();
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	@Override
 	public void broadcastBlock(BlockDto block) {
 
 		HttpHeaders headers = new HttpHeaders();
 		headers.setAccept(Arrays.asList(MediaType.APPLICATION_JSON));
+		headers.set("X-Process-Id", processId);
 		HttpEntity<BlockDto> entity = new HttpEntity<BlockDto>(block, headers);
 
-		for (int port : clientPortService.getClientPorts()) {
-			log.info("Transfer to client on port " + port);
-			restTemplate.exchange("http://localhost:" + port + "/client/message", HttpMethod.POST, entity,
-					String.class);
+		List<Integer> ports = clientPortService.getClientPorts();
+		BroadcastTracker tracker = new BroadcastTracker(ports.size(), broadcastMode.requiredAcks(ports.size()));
+		int attempts = broadcastMode == BroadcastMode.ASYNC ? maxAttempts : 1;
+
+		for (int port : ports) {
+			executor.execute(() -> tracker.complete(send(port, entity, attempts)));
+		}
+
+		long start = System.nanoTime();
+		boolean satisfied = tracker.await(timeoutMs);
+		fanoutTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+		if (!satisfied) {
+			throw new IllegalStateException("Broadcast reached " + tracker.getAcks() + " of "
+					+ tracker.getRequired() + " required peers");
 		}
+	}
 
+	@Override
+	public int fetchBlocks(int port, int fromHeight, Consumer<BlockDto> sink) {
+		return chainRangeClient.fetchBlocks("http://localhost:" + port, fromHeight, sink);
 	}
 
+	private boolean send(int port, HttpEntity<BlockDto> entity, int attempts) {
+		for (int attempt = 1; attempt <= attempts; attempt++) {
+			try {
+				log.info("Transfer to client on port " + port);
+				String url = "http://localhost:" + port;
+				peerMetrics.record("block", url,
+						() -> restTemplate.exchange(url + "/client/message", HttpMethod.POST, entity, String.class));
+				return true;
+			} catch (Exception e) {
+				log.error("Failed to send block to {} (attempt {}/{}): {}", port, attempt, attempts, e.getMessage());
+				if (attempt < attempts) {
+					try {
+						TimeUnit.MILLISECONDS.sleep(backoffMs * attempt);
+					} catch (InterruptedException interrupted) {
+						Thread.currentThread().interrupt();
+						return false;
+					}
+				}
+			}
+		}
+		return false;
+	}
 }
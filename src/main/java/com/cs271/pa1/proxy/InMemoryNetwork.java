@@ -0,0 +1,38 @@
+package com.cs271.pa1.proxy;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Connects the nodes of an in-process cluster
+public class InMemoryNetwork {
+	private final Map<String, InMemoryPeerTransport> endpoints = new ConcurrentHashMap<>();
+
+	private final LongAdder messages = new LongAdder();
+
+	void register(String processId, InMemoryPeerTransport endpoint) {
+		endpoints.put(processId, endpoint);
+	}
+
+	void unregister(String processId) {
+		endpoints.remove(processId);
+	}
+
+	InMemoryPeerTransport endpoint(String processId) {
+		InMemoryPeerTransport endpoint = endpoints.get(processId);
+		if (endpoint == null) {
+			throw new IllegalStateException("No node registered for process " + processId);
+		}
+		messages.increment();
+		return endpoint;
+	}
+
+	// Every message arrives; the test harness overrides this to model a lossy link
+	boolean isLost(String type, String processId) {
+		return false;
+	}
+
+	public long getMessageCount() {
+		return messages.sum();
+	}
+}
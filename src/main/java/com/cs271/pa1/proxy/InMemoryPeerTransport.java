@@ -0,0 +1,171 @@
+package com.cs271.pa1.proxy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.cs271.pa1.dto.BlockDto;
+import com.cs271.pa1.dto.LamportMessage;
+import com.cs271.pa1.dto.Request;
+import com.cs271.pa1.service.BlockchainService;
+import com.cs271.pa1.service.ClientPortService;
+import com.cs271.pa1.service.LamportMutexService;
+import com.cs271.pa1.service.LatencyInjectionService;
+import com.cs271.pa1.store.BlockCodec;
+import com.cs271.pa1.store.BlockStreamCodec;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "peer.transport", havingValue = "memory")
+public class InMemoryPeerTransport implements LamportTransport, BlockTransport {
+	@Value("${server.port}")
+	private String processId;
+
+	@Autowired
+	private InMemoryNetwork network;
+
+	@Autowired
+	private ClientPortService clientPortService;
+
+	@Autowired
+	private ObjectProvider<LamportMutexService> lamportMutexService;
+
+	@Autowired
+	private ObjectProvider<BlockchainService> blockchainService;
+
+	@Autowired
+	private LatencyInjectionService latencyService;
+
+	@Value("${broadcast.mode:all}")
+	private String mode;
+
+	@Value("${broadcast.timeout-ms:10000}")
+	private long timeoutMs;
+
+	private BroadcastMode broadcastMode;
+
+	@PostConstruct
+	public void start() {
+		broadcastMode = BroadcastMode.valueOf(mode.trim().toUpperCase());
+		network.register(processId, this);
+	}
+
+	@PreDestroy
+	public void stop() {
+		network.unregister(processId);
+	}
+
+	@Override
+	public void sendRequest(String targetUrl, Request request) {
+		Request copy = copy(request);
+		endpoint(targetUrl).deliver("request", copy.getProcessId(),
+				target -> target.lamportMutexService.getObject().receiveRequest(copy));
+	}
+
+	@Override
+	public void sendReply(String targetUrl, String processId, long timestamp) {
+		endpoint(targetUrl).deliver("reply", processId,
+				target -> target.lamportMutexService.getObject().receiveReply(processId, timestamp));
+	}
+
+	@Override
+	public void sendRelease(String targetUrl, String processId, long timestamp) {
+		endpoint(targetUrl).deliver("release", processId,
+				target -> target.lamportMutexService.getObject().receiveRelease(processId, timestamp));
+	}
+
+	@Override
+	public void sendMessage(String targetUrl, LamportMessage message) {
+		LamportMessage copy = new LamportMessage();
+		copy.setProcessId(message.getProcessId());
+		copy.setTimestamp(message.getTimestamp());
+		copy.setRelease(message.getRelease());
+		copy.setReleaseHeight(message.getReleaseHeight());
+		copy.setReply(message.isReply());
+		if (message.getRequest() != null) {
+			copy.setRequest(copy(message.getRequest()));
+		}
+		for (BlockDto block : message.getBlocks()) {
+			copy.getBlocks().add(copy(block));
+		}
+		endpoint(targetUrl).deliver("message", copy.getProcessId(),
+				target -> target.lamportMutexService.getObject().receiveMessage(copy));
+	}
+
+	// Receivers keep requests in their queues, so each gets its own copy as it would off the wire
+	private static Request copy(Request request) {
+		Request copy = Request.of(request.getTimestamp(), request.getProcessId());
+		copy.setResources(request.getResources());
+		return copy;
+	}
+
+	private static BlockDto copy(BlockDto block) {
+		ByteBuffer buffer = ByteBuffer.allocate(BlockCodec.maxEncodedSize(block));
+		BlockCodec.encode(block, buffer);
+		buffer.flip();
+		BlockDto copy = BlockCodec.decode(buffer);
+		copy.setHeight(block.getHeight());
+		return copy;
+	}
+
+	// Goes through the same compressed stream as the HTTP range endpoint
+	@Override
+	public int fetchBlocks(int port, int fromHeight, Consumer<BlockDto> sink) {
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		try {
+			network.endpoint(String.valueOf(port)).blockchainService.getObject().streamBlocks(fromHeight, stream);
+			return BlockStreamCodec.read(new ByteArrayInputStream(stream.toByteArray()), sink);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	// Waits for acknowledgements as ClientProxy does
+	@Override
+	public void broadcastBlock(BlockDto block) {
+		List<Integer> ports = clientPortService.getClientPorts();
+		BroadcastTracker tracker = new BroadcastTracker(ports.size(), broadcastMode.requiredAcks(ports.size()));
+		for (int port : ports) {
+			BlockDto copy = copy(block);
+			network.endpoint(String.valueOf(port))
+					.deliver("block", processId, target -> target.blockchainService.getObject().receiveBlock(copy))
+					.whenComplete((result, error) -> tracker.complete(error == null));
+		}
+		if (!tracker.await(timeoutMs)) {
+			throw new IllegalStateException("Broadcast reached " + tracker.getAcks() + " of "
+					+ tracker.getRequired() + " required peers");
+		}
+	}
+
+	private InMemoryPeerTransport endpoint(String targetUrl) {
+		return network.endpoint(String.valueOf(URI.create(targetUrl).getPort()));
+	}
+
+	// Runs on the receiver's delivery thread for the sender
+	private CompletableFuture<Void> deliver(String type, String from, Consumer<InMemoryPeerTransport> handler) {
+		if (network.isLost(type, processId)) {
+			return CompletableFuture.failedFuture(new IllegalStateException("Lost " + type + " from " + from));
+		}
+		return latencyService.deliver(type, from, () -> handler.accept(this)).whenComplete((result, error) -> {
+			if (error != null) {
+				log.error("Failed to deliver {} from {} to {}", type, from, processId, error);
+			}
+		});
+	}
+}
@@ -1,31 +1,36 @@
 package com.cs271.pa1.proxy;
 
-import org.springframework.boot.web.client.RestTemplateBuilder;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
-import org.springframework.web.client.RestTemplate;
 
+import com.cs271.pa1.dto.LamportMessage;
 import com.cs271.pa1.dto.Request;
 
 @Component
-public class LamportProxy {
-	private RestTemplate restTemplate = new RestTemplateBuilder().build();
+@ConditionalOnProperty(name = "peer.transport", havingValue = "http", matchIfMissing = true)
+public class LamportProxy implements LamportTransport {
+	@Autowired
+	private PeerDispatcher dispatcher;
 
-	@Async
+	@Override
 	public void sendRequest(String targetUrl, Request request) {
-		restTemplate.postForObject(targetUrl + "/api/lamport/request", request, void.class);
+		dispatcher.post("request", targetUrl, "/api/lamport/request", request);
 	}
 
-	@Async
+	@Override
 	public void sendReply(String targetUrl, String processId, long timestamp) {
-		restTemplate.postForObject(targetUrl + "/api/lamport/reply/" + processId + "?timestamp=" + timestamp, null,
-				Void.class);
+		dispatcher.post("reply", targetUrl, "/api/lamport/reply/" + processId + "?timestamp=" + timestamp, null);
 	}
 
-	@Async
+	@Override
 	public void sendRelease(String targetUrl, String processId, long timestamp) {
-		restTemplate.postForObject(
-				targetUrl + "/api/lamport/release?processId=" + processId + "&timestamp=" + timestamp, null,
-				Void.class);
+		dispatcher.post("release", targetUrl,
+				"/api/lamport/release?processId=" + processId + "&timestamp=" + timestamp, null);
+	}
+
+	@Override
+	public void sendMessage(String targetUrl, LamportMessage message) {
+		dispatcher.post("message", targetUrl, "/api/lamport/message", message);
 	}
 }
@@ -0,0 +1,15 @@
+package com.cs271.pa1.proxy;
+
+import com.cs271.pa1.dto.LamportMessage;
+import com.cs271.pa1.dto.Request;
+
+public interface LamportTransport {
+
+	void sendRequest(String targetUrl, Request request);
+
+	void sendReply(String targetUrl, String processId, long timestamp);
+
+	void sendRelease(String targetUrl, String processId, long timestamp);
+
+	void sendMessage(String targetUrl, LamportMessage message);
+}
@@ -0,0 +1,129 @@
+package com.cs271.pa1.proxy;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+// Outbound mutex messages over HTTP, one ordered queue and thread per peer
+@Slf4j
+@Component
+public class PeerDispatcher {
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@Autowired
+	private PeerMetrics peerMetrics;
+
+	@Value("${peer.outbound.queue-capacity:1024}")
+	private int queueCapacity;
+
+	// How long a sender waits for room before each warning; mutex messages are never dropped
+	@Value("${peer.outbound.offer-timeout-ms:5000}")
+	private long offerTimeoutMs;
+
+	@Value("${peer.outbound.timeout-ms:10000}")
+	private long timeoutMs;
+
+	private final Map<String, PeerChannel> channels = new ConcurrentHashMap<>();
+
+	private RestTemplate restTemplate;
+
+	private volatile boolean stopped;
+
+	@PostConstruct
+	public void init() {
+		// HTTP/1.1 skips the h2c upgrade attempt, the peers' Tomcat does not speak it
+		HttpClient httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1)
+				.connectTimeout(Duration.ofMillis(timeoutMs)).build();
+		JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient);
+		requestFactory.setReadTimeout(Duration.ofMillis(timeoutMs));
+		restTemplate = new RestTemplateBuilder().requestFactory(() -> requestFactory).build();
+	}
+
+	@PreDestroy
+	public void stop() {
+		stopped = true;
+		channels.values().forEach(channel -> channel.thread.interrupt());
+	}
+
+	public void post(String type, String targetUrl, String path, Object body) {
+		send(targetUrl, () -> peerMetrics.record(type, targetUrl, () -> {
+			restTemplate.postForObject(targetUrl + path, body, Void.class);
+		}));
+	}
+
+	// Waits as long as the peer's queue is full; throws if the message cannot be queued at all
+	public void send(String targetUrl, Runnable send) {
+		PeerChannel channel = channels.computeIfAbsent(targetUrl, PeerChannel::new);
+		Outbound outbound = new Outbound(send, System.nanoTime());
+		try {
+			while (!stopped) {
+				if (channel.queue.offer(outbound, offerTimeoutMs, TimeUnit.MILLISECONDS)) {
+					return;
+				}
+				meterRegistry.counter("peer.outbound.stalled", "peer", targetUrl).increment();
+				log.warn("Outbound queue to {} full for {} ms, still waiting", targetUrl,
+						TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - outbound.queuedAt()));
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		throw new IllegalStateException("Could not queue a message to " + targetUrl);
+	}
+
+	private record Outbound(Runnable send, long queuedAt) {
+	}
+
+	private class PeerChannel {
+		private final BlockingQueue<Outbound> queue = new ArrayBlockingQueue<>(queueCapacity);
+		private final String targetUrl;
+		private final Thread thread;
+		private final Timer latency;
+
+		PeerChannel(String targetUrl) {
+			this.targetUrl = targetUrl;
+			Gauge.builder("peer.outbound.queue.depth", queue, BlockingQueue::size).tag("peer", targetUrl)
+					.register(meterRegistry);
+			latency = Timer.builder("peer.outbound.latency").description("Queued until sent to a peer")
+					.tag("peer", targetUrl).publishPercentileHistogram().register(meterRegistry);
+			thread = new Thread(this::drain, "outbound-" + targetUrl.substring(targetUrl.lastIndexOf(':') + 1));
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		private void drain() {
+			while (!Thread.currentThread().isInterrupted()) {
+				Outbound outbound;
+				try {
+					outbound = queue.take();
+				} catch (InterruptedException e) {
+					return;
+				}
+				try {
+					outbound.send().run();
+				} catch (Exception e) {
+					log.error("Failed to send to {}: {}", targetUrl, e.getMessage());
+				}
+				latency.record(System.nanoTime() - outbound.queuedAt(), TimeUnit.NANOSECONDS);
+			}
+		}
+	}
+}
@@ -0,0 +1,233 @@
+package com.cs271.pa1.proxy;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.cs271.pa1.dto.BlockDto;
+import com.cs271.pa1.dto.LamportMessage;
+import com.cs271.pa1.dto.Request;
+import com.cs271.pa1.store.BlockCodec;
+
+// Frame layout: int length (type + payload), byte type, payload
+public final class PeerFrameCodec {
+	public static final byte REQUEST = 1;
+	public static final byte REPLY = 2;
+	public static final byte RELEASE = 3;
+	public static final byte BLOCK = 4;
+	public static final byte MESSAGE = 5;
+	public static final byte HELLO = 6;
+
+	private static final byte HAS_RELEASE = 1;
+	private static final byte HAS_REQUEST = 1 << 1;
+	private static final byte HAS_REPLY = 1 << 2;
+	private static final byte HAS_RELEASE_HEIGHT = 1 << 3;
+
+	public static final int HEADER_SIZE = 4;
+
+	private PeerFrameCodec() {
+	}
+
+	// Requests append their locked accounts after the clock message
+	public static byte[] encodeRequest(Request request) {
+		List<String> resources = request.getResources();
+		if (resources == null || resources.isEmpty()) {
+			return encodeClockMessage(REQUEST, request.getProcessId(), request.getTimestamp());
+		}
+		byte[] id = request.getProcessId().getBytes(StandardCharsets.UTF_8);
+		List<byte[]> names = new ArrayList<>(resources.size());
+		int size = HEADER_SIZE + 1 + 8 + 1 + id.length + 2;
+		for (String resource : resources) {
+			byte[] name = resource.getBytes(StandardCharsets.UTF_8);
+			names.add(name);
+			size += 1 + name.length;
+		}
+		ByteBuffer frame = ByteBuffer.allocate(size);
+		frame.putInt(size - HEADER_SIZE);
+		frame.put(REQUEST);
+		frame.putLong(request.getTimestamp());
+		frame.put((byte) id.length);
+		frame.put(id);
+		frame.putShort((short) names.size());
+		for (byte[] name : names) {
+			frame.put((byte) name.length);
+			frame.put(name);
+		}
+		return frame.array();
+	}
+
+	// Opens a connection with the sender's process id and epoch
+	public static byte[] encodeHello(String processId, long epoch) {
+		return encodeClockMessage(HELLO, processId, epoch);
+	}
+
+	public static byte[] encodeReply(String processId, long timestamp) {
+		return encodeClockMessage(REPLY, processId, timestamp);
+	}
+
+	public static byte[] encodeRelease(String processId, long timestamp) {
+		return encodeClockMessage(RELEASE, processId, timestamp);
+	}
+
+	private static byte[] encodeClockMessage(byte type, String processId, long timestamp) {
+		byte[] id = processId.getBytes(StandardCharsets.UTF_8);
+		ByteBuffer frame = ByteBuffer.allocate(HEADER_SIZE + 1 + 8 + 1 + id.length);
+		frame.putInt(frame.capacity() - HEADER_SIZE);
+		frame.put(type);
+		frame.putLong(timestamp);
+		frame.put((byte) id.length);
+		frame.put(id);
+		return frame.array();
+	}
+
+	public static byte[] encodeBlock(String processId, BlockDto block) {
+		byte[] id = processId.getBytes(StandardCharsets.UTF_8);
+		ByteBuffer frame = ByteBuffer
+				.allocate(HEADER_SIZE + 1 + 1 + id.length + 4 + BlockCodec.maxEncodedSize(block));
+		frame.position(HEADER_SIZE);
+		frame.put(BLOCK);
+		frame.put((byte) id.length);
+		frame.put(id);
+		putBlock(frame, block);
+		int length = frame.position();
+		frame.putInt(0, length - HEADER_SIZE);
+		byte[] bytes = new byte[length];
+		System.arraycopy(frame.array(), 0, bytes, 0, length);
+		return bytes;
+	}
+
+	// Combined message: clock fields, flags, release, request, then blocks
+	public static byte[] encodeMessage(LamportMessage message) {
+		byte[] id = message.getProcessId().getBytes(StandardCharsets.UTF_8);
+		byte[] request = message.getRequest() == null ? null : encodeRequest(message.getRequest());
+		int size = HEADER_SIZE + 1 + 8 + 1 + id.length + 1 + 8 + 4 + 4;
+		if (request != null) {
+			size += 4 + request.length - HEADER_SIZE - 1;
+		}
+		for (BlockDto block : message.getBlocks()) {
+			size += 4 + 4 + BlockCodec.maxEncodedSize(block);
+		}
+		byte flags = (byte) ((message.getRelease() != null ? HAS_RELEASE : 0) | (request != null ? HAS_REQUEST : 0)
+				| (message.isReply() ? HAS_REPLY : 0) | (message.getReleaseHeight() != null ? HAS_RELEASE_HEIGHT : 0));
+
+		ByteBuffer frame = ByteBuffer.allocate(size);
+		frame.position(HEADER_SIZE);
+		frame.put(MESSAGE);
+		frame.putLong(message.getTimestamp());
+		frame.put((byte) id.length);
+		frame.put(id);
+		frame.put(flags);
+		frame.putLong(message.getRelease() == null ? 0 : message.getRelease());
+		if (message.getReleaseHeight() != null) {
+			frame.putInt(message.getReleaseHeight());
+		}
+		if (request != null) {
+			frame.putInt(request.length - HEADER_SIZE - 1);
+			frame.put(request, HEADER_SIZE + 1, request.length - HEADER_SIZE - 1);
+		}
+		frame.putInt(message.getBlocks().size());
+		for (BlockDto block : message.getBlocks()) {
+			int lengthAt = frame.position();
+			frame.position(lengthAt + 4);
+			putBlock(frame, block);
+			frame.putInt(lengthAt, frame.position() - lengthAt - 4);
+		}
+		int length = frame.position();
+		frame.putInt(0, length - HEADER_SIZE);
+		return Arrays.copyOf(frame.array(), length);
+	}
+
+	public static long decodeTimestamp(ByteBuffer payload) {
+		return payload.getLong(0);
+	}
+
+	public static long decodeEpoch(ByteBuffer payload) {
+		return payload.getLong(0);
+	}
+
+	public static String decodeProcessId(ByteBuffer payload) {
+		int length = Byte.toUnsignedInt(payload.get(8));
+		byte[] id = new byte[length];
+		payload.get(9, id);
+		return new String(id, StandardCharsets.UTF_8);
+	}
+
+	public static List<String> decodeResources(ByteBuffer payload) {
+		int offset = 9 + Byte.toUnsignedInt(payload.get(8));
+		if (payload.limit() <= offset) {
+			return null;
+		}
+		int count = Short.toUnsignedInt(payload.getShort(offset));
+		offset += 2;
+		List<String> resources = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			byte[] name = new byte[Byte.toUnsignedInt(payload.get(offset))];
+			payload.get(offset + 1, name);
+			resources.add(new String(name, StandardCharsets.UTF_8));
+			offset += 1 + name.length;
+		}
+		return resources;
+	}
+
+	public static Request decodeRequest(ByteBuffer payload) {
+		Request request = Request.of(decodeTimestamp(payload), decodeProcessId(payload));
+		request.setResources(decodeResources(payload));
+		return request;
+	}
+
+	public static LamportMessage decodeMessage(ByteBuffer payload) {
+		LamportMessage message = new LamportMessage();
+		message.setTimestamp(decodeTimestamp(payload));
+		message.setProcessId(decodeProcessId(payload));
+		int offset = 9 + Byte.toUnsignedInt(payload.get(8));
+		byte flags = payload.get(offset);
+		if ((flags & HAS_RELEASE) != 0) {
+			message.setRelease(payload.getLong(offset + 1));
+		}
+		message.setReply((flags & HAS_REPLY) != 0);
+		offset += 1 + 8;
+		if ((flags & HAS_RELEASE_HEIGHT) != 0) {
+			message.setReleaseHeight(payload.getInt(offset));
+			offset += 4;
+		}
+		if ((flags & HAS_REQUEST) != 0) {
+			int length = payload.getInt(offset);
+			message.setRequest(decodeRequest(payload.slice(offset + 4, length)));
+			offset += 4 + length;
+		}
+		int blocks = payload.getInt(offset);
+		offset += 4;
+		for (int i = 0; i < blocks; i++) {
+			int length = payload.getInt(offset);
+			message.getBlocks().add(getBlock(payload.slice(offset + 4, length)));
+			offset += 4 + length;
+		}
+		return message;
+	}
+
+	public static String decodeBlockOrigin(ByteBuffer payload) {
+		byte[] id = new byte[Byte.toUnsignedInt(payload.get(0))];
+		payload.get(1, id);
+		return new String(id, StandardCharsets.UTF_8);
+	}
+
+	public static BlockDto decodeBlock(ByteBuffer payload) {
+		int offset = 1 + Byte.toUnsignedInt(payload.get(0));
+		return getBlock(payload.slice(offset, payload.limit() - offset));
+	}
+
+	// Blocks go out as an int height, -1 when the block has none, then the encoded block
+	private static void putBlock(ByteBuffer frame, BlockDto block) {
+		frame.putInt(block.getHeight() == null ? -1 : block.getHeight());
+		BlockCodec.encode(block, frame);
+	}
+
+	private static BlockDto getBlock(ByteBuffer payload) {
+		int height = payload.getInt(0);
+		BlockDto block = BlockCodec.decode(payload.slice(4, payload.limit() - 4));
+		block.setHeight(height < 0 ? null : height);
+		return block;
+	}
+}
@@ -0,0 +1,49 @@
+package com.cs271.pa1.proxy;
+
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+@Component
+public class PeerMetrics {
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	// Times one outbound message to a peer, tagged by type and outcome
+	public void record(String type, String peer, Runnable send) {
+		long start = System.nanoTime();
+		String outcome = "success";
+		try {
+			send.run();
+		} catch (RuntimeException e) {
+			outcome = "failure";
+			throw e;
+		} finally {
+			timer(type, peer, outcome).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	// Times one coalesced socket write and counts the frames it carried
+	public void recordBatch(String peer, int frames, long nanos) {
+		Timer.builder("peer.batch.write").description("Socket write of one coalesced frame batch").tag("peer", peer)
+				.publishPercentileHistogram().register(meterRegistry).record(nanos, TimeUnit.NANOSECONDS);
+		meterRegistry.summary("peer.batch.frames", "peer", peer).record(frames);
+	}
+
+	public void recordFailure(String type, String peer) {
+		meterRegistry.counter("peer.message.failures", "type", type, "peer", peer).increment();
+	}
+
+	private Timer timer(String type, String peer, String outcome) {
+		if ("failure".equals(outcome)) {
+			recordFailure(type, peer);
+		}
+		return Timer.builder("peer.message").description("Round trip of one message to a peer")
+				.tags("type", type, "peer", peer, "outcome", outcome).publishPercentileHistogram()
+				.register(meterRegistry);
+	}
+}
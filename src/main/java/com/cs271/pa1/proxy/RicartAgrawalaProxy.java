@@ -0,0 +1,21 @@
+package com.cs271.pa1.proxy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.cs271.pa1.dto.Request;
+
+@Component
+public class RicartAgrawalaProxy {
+	@Autowired
+	private PeerDispatcher dispatcher;
+
+	public void sendRequest(String targetUrl, Request request) {
+		dispatcher.post("request", targetUrl, "/api/ricart-agrawala/request", request);
+	}
+
+	public void sendReply(String targetUrl, String processId, long timestamp, long requestTimestamp) {
+		dispatcher.post("reply", targetUrl, "/api/ricart-agrawala/reply/" + processId + "?timestamp=" + timestamp
+				+ "&requestTimestamp=" + requestTimestamp, null);
+	}
+}
@@ -0,0 +1,25 @@
+package com.cs271.pa1.proxy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+
+import com.cs271.pa1.dto.TokenDto;
+
+@Component
+public class SuzukiKasamiProxy {
+	@Autowired
+	private PeerDispatcher dispatcher;
+
+	public void sendRequest(String targetUrl, String processId, long sequenceNumber) {
+		dispatcher.post("request", targetUrl,
+				"/api/suzuki-kasami/request?processId=" + processId + "&sequenceNumber=" + sequenceNumber, null);
+	}
+
+	public void sendToken(String targetUrl, String processId, TokenDto token) {
+		HttpHeaders headers = new HttpHeaders();
+		headers.set("X-Process-Id", processId);
+		dispatcher.post("token", targetUrl, "/api/suzuki-kasami/token", new HttpEntity<>(token, headers));
+	}
+}
@@ -0,0 +1,494 @@
+package com.cs271.pa1.proxy;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.cs271.pa1.dto.BlockDto;
+import com.cs271.pa1.dto.LamportMessage;
+import com.cs271.pa1.dto.Request;
+import com.cs271.pa1.service.BlockchainService;
+import com.cs271.pa1.service.ClientPortService;
+import com.cs271.pa1.service.LamportMutexService;
+import com.cs271.pa1.service.LatencyInjectionService;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "peer.transport", havingValue = "tcp")
+public class TcpPeerTransport implements LamportTransport, BlockTransport {
+	private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+	private static final int MAX_FRAME_SIZE = 16 * 1024 * 1024;
+	// Written frames are kept for resending
+	private static final int HANDSHAKE_TIMEOUT_MS = 5000;
+	private static final long MIN_BACKOFF_MS = 10;
+	private static final long MAX_BACKOFF_MS = 1000;
+	private static final long IDLE_PROBE_MS = 100;
+
+	@Value("${server.port}")
+	private int serverPort;
+
+	@Value("${peer.tcp.port-offset:1000}")
+	private int portOffset;
+
+	@Value("${peer.tcp.replay-window-bytes:4194304}")
+	private long replayWindowBytes;
+
+	@Autowired
+	private ClientPortService clientPortService;
+
+	@Autowired
+	private ObjectProvider<LamportMutexService> lamportMutexService;
+
+	@Autowired
+	private ObjectProvider<BlockchainService> blockchainService;
+
+	@Autowired
+	private LatencyInjectionService latencyService;
+
+	@Autowired
+	private PeerMetrics peerMetrics;
+
+	@Autowired
+	private ChainRangeClient chainRangeClient;
+
+	private final Map<InetSocketAddress, PeerConnection> connections = new ConcurrentHashMap<>();
+
+	private final List<SocketChannel> inboundChannels = new ArrayList<>();
+
+	// Frames delivered from each sender's current epoch, across that sender's connections
+	private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+
+	private ServerSocketChannel serverChannel;
+
+	private volatile boolean running = true;
+
+	@PostConstruct
+	public void start() throws IOException {
+		serverChannel = ServerSocketChannel.open();
+		serverChannel.bind(new InetSocketAddress(serverPort + portOffset));
+		Thread acceptor = new Thread(this::acceptLoop, "peer-acceptor");
+		acceptor.setDaemon(true);
+		acceptor.start();
+		log.info("Peer transport listening on port {}", serverPort + portOffset);
+	}
+
+	@PreDestroy
+	public void stop() {
+		running = false;
+		connections.values().forEach(PeerConnection::close);
+		try {
+			serverChannel.close();
+			synchronized (inboundChannels) {
+				for (SocketChannel channel : inboundChannels) {
+					channel.close();
+				}
+			}
+		} catch (IOException e) {
+			log.error("Failed to close peer transport", e);
+		}
+	}
+
+	@Override
+	public void sendRequest(String targetUrl, Request request) {
+		send(targetUrl, PeerFrameCodec.encodeRequest(request));
+	}
+
+	@Override
+	public void sendReply(String targetUrl, String processId, long timestamp) {
+		send(targetUrl, PeerFrameCodec.encodeReply(processId, timestamp));
+	}
+
+	@Override
+	public void sendRelease(String targetUrl, String processId, long timestamp) {
+		send(targetUrl, PeerFrameCodec.encodeRelease(processId, timestamp));
+	}
+
+	@Override
+	public void sendMessage(String targetUrl, LamportMessage message) {
+		send(targetUrl, PeerFrameCodec.encodeMessage(message));
+	}
+
+	@Override
+	public void broadcastBlock(BlockDto block) {
+		byte[] frame = PeerFrameCodec.encodeBlock(String.valueOf(serverPort), block);
+		for (int port : clientPortService.getClientPorts()) {
+			log.info("Transfer to client on port " + port);
+			connection(new InetSocketAddress("localhost", port + portOffset)).enqueue(frame);
+		}
+	}
+
+	// Bulk ranges go over the peer's HTTP port, which streams them without framing
+	@Override
+	public int fetchBlocks(int port, int fromHeight, Consumer<BlockDto> sink) {
+		return chainRangeClient.fetchBlocks("http://localhost:" + port, fromHeight, sink);
+	}
+
+	private void send(String targetUrl, byte[] frame) {
+		URI uri = URI.create(targetUrl);
+		connection(new InetSocketAddress(uri.getHost(), uri.getPort() + portOffset)).enqueue(frame);
+	}
+
+	private PeerConnection connection(InetSocketAddress address) {
+		return connections.computeIfAbsent(address, PeerConnection::new);
+	}
+
+	private void acceptLoop() {
+		while (running) {
+			try {
+				SocketChannel channel = serverChannel.accept();
+				channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+				synchronized (inboundChannels) {
+					inboundChannels.add(channel);
+				}
+				Thread reader = new Thread(() -> readLoop(channel), "peer-reader-" + channel.getRemoteAddress());
+				reader.setDaemon(true);
+				reader.start();
+			} catch (IOException e) {
+				if (running) {
+					log.error("Failed to accept peer connection", e);
+				}
+			}
+		}
+	}
+
+	// One reader per connection, skipping frames already delivered
+	private void readLoop(SocketChannel channel) {
+		ByteBuffer header = ByteBuffer.allocate(PeerFrameCodec.HEADER_SIZE);
+		ByteBuffer payload = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+		Session session = null;
+		long sequence = 0;
+		try {
+			while (running) {
+				header.clear();
+				readFully(channel, header);
+				int length = header.getInt(0);
+				if (length <= 0 || length > MAX_FRAME_SIZE) {
+					throw new IOException("Invalid frame length " + length);
+				}
+				if (payload.capacity() < length) {
+					payload = ByteBuffer.allocate(Integer.highestOneBit(length) << 1);
+				}
+				payload.clear().limit(length);
+				readFully(channel, payload);
+				payload.flip();
+				byte type = payload.get();
+				if (type == PeerFrameCodec.HELLO) {
+					ByteBuffer hello = payload.slice();
+					long epoch = PeerFrameCodec.decodeEpoch(hello);
+					// A new epoch replaces the sender's earlier session, which it will not resume
+					session = sessions.compute(PeerFrameCodec.decodeProcessId(hello),
+							(sender, current) -> current != null && current.epoch == epoch ? current : new Session(epoch));
+					sequence = handshake(channel, session);
+					continue;
+				}
+				if (session == null) {
+					dispatch(type, payload.slice());
+					continue;
+				}
+				synchronized (session) {
+					if (sequence >= session.delivered) {
+						dispatch(type, payload.slice());
+						session.delivered = sequence + 1;
+					}
+				}
+				sequence++;
+			}
+		} catch (EOFException e) {
+			log.info("Peer connection closed");
+		} catch (IOException e) {
+			if (running) {
+				log.error("Peer connection failed", e);
+			}
+		} finally {
+			synchronized (inboundChannels) {
+				inboundChannels.remove(channel);
+			}
+			try {
+				channel.close();
+			} catch (IOException e) {
+				log.error("Failed to close peer connection", e);
+			}
+		}
+	}
+
+	// Tells the sender how many of its frames were delivered and reads where it resumes
+	private static long handshake(SocketChannel channel, Session session) throws IOException {
+		ByteBuffer delivered = ByteBuffer.allocate(8);
+		synchronized (session) {
+			delivered.putLong(session.delivered).flip();
+		}
+		while (delivered.hasRemaining()) {
+			channel.write(delivered);
+		}
+		ByteBuffer resume = ByteBuffer.allocate(8);
+		readFully(channel, resume);
+		return resume.getLong(0);
+	}
+
+	private void dispatch(byte type, ByteBuffer payload) {
+		switch (type) {
+		case PeerFrameCodec.REQUEST: {
+			Request request = PeerFrameCodec.decodeRequest(payload);
+			latencyService.deliver("request", request.getProcessId(),
+					() -> lamportMutexService.getObject().receiveRequest(request));
+			break;
+		}
+		case PeerFrameCodec.REPLY: {
+			String processId = PeerFrameCodec.decodeProcessId(payload);
+			long timestamp = PeerFrameCodec.decodeTimestamp(payload);
+			latencyService.deliver("reply", processId,
+					() -> lamportMutexService.getObject().receiveReply(processId, timestamp));
+			break;
+		}
+		case PeerFrameCodec.RELEASE: {
+			String processId = PeerFrameCodec.decodeProcessId(payload);
+			long timestamp = PeerFrameCodec.decodeTimestamp(payload);
+			latencyService.deliver("release", processId,
+					() -> lamportMutexService.getObject().receiveRelease(processId, timestamp));
+			break;
+		}
+		case PeerFrameCodec.MESSAGE: {
+			LamportMessage message = PeerFrameCodec.decodeMessage(payload);
+			latencyService.deliver("message", message.getProcessId(),
+					() -> lamportMutexService.getObject().receiveMessage(message));
+			break;
+		}
+		case PeerFrameCodec.BLOCK: {
+			String processId = PeerFrameCodec.decodeBlockOrigin(payload);
+			BlockDto block = PeerFrameCodec.decodeBlock(payload);
+			log.info("Incoming broadcast message {}", block);
+			latencyService.deliver("block", processId, () -> blockchainService.getObject().receiveBlock(block));
+			break;
+		}
+		default:
+			log.warn("Unknown peer frame type {}", type);
+		}
+	}
+
+	private static void readFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer) < 0) {
+				throw new EOFException();
+			}
+		}
+	}
+
+	private static class Session {
+		private final long epoch;
+		private long delivered;
+
+		Session(long epoch) {
+			this.epoch = epoch;
+		}
+	}
+
+	// One writer per peer, resending retained frames on reconnect
+	private class PeerConnection {
+		private final InetSocketAddress address;
+		private final BlockingQueue<byte[]> outbound = new LinkedBlockingQueue<>();
+		private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+		private final Thread writer;
+		private final String peer;
+		private long epoch = ThreadLocalRandom.current().nextLong();
+		private final Deque<byte[]> retained = new ArrayDeque<>();
+		// Sequence number of the first retained frame
+		private long retainedFrom;
+		private long retainedBytes;
+		// Set when a new session replaced one that lost frames, until the mutex layer resyncs
+		private boolean resyncPending;
+		private SocketChannel channel;
+
+		PeerConnection(InetSocketAddress address) {
+			this.address = address;
+			this.peer = address.getHostString() + ":" + address.getPort();
+			this.writer = new Thread(this::writeLoop, "peer-writer-" + address.getPort());
+			this.writer.setDaemon(true);
+			this.writer.start();
+		}
+
+		void enqueue(byte[] frame) {
+			outbound.add(frame);
+		}
+
+		private void writeLoop() {
+			List<byte[]> batch = new ArrayList<>();
+			long backoffMs = MIN_BACKOFF_MS;
+			while (running) {
+				try {
+					// While disconnected the retained frames go out as soon as the peer is back
+					if (channel != null) {
+						byte[] frame = outbound.poll(IDLE_PROBE_MS, TimeUnit.MILLISECONDS);
+						if (frame == null) {
+							probe();
+							continue;
+						}
+						batch.add(frame);
+					} else if (retained.isEmpty() && !resyncPending) {
+						batch.add(outbound.take());
+					}
+					outbound.drainTo(batch);
+					long start = System.nanoTime();
+					for (byte[] frame : batch) {
+						retained.add(frame);
+						retainedBytes += frame.length;
+					}
+					if (channel == null) {
+						connect();
+					} else {
+						write(batch);
+					}
+					if (!batch.isEmpty()) {
+						peerMetrics.recordBatch(peer, batch.size(), System.nanoTime() - start);
+					}
+					backoffMs = MIN_BACKOFF_MS;
+				} catch (InterruptedException e) {
+					return;
+				} catch (IOException e) {
+					log.warn("Failed to send to {}, reconnecting in {} ms: {}", address, backoffMs, e.getMessage());
+					peerMetrics.recordFailure("tcp-batch", peer);
+					writeBuffer.clear();
+					closeChannel();
+					try {
+						Thread.sleep(backoffMs);
+					} catch (InterruptedException interrupted) {
+						return;
+					}
+					backoffMs = Math.min(backoffMs << 1, MAX_BACKOFF_MS);
+				} finally {
+					batch.clear();
+					trimRetained();
+				}
+			}
+		}
+
+		// Hello, then the peer's delivered count, then the sequence the resent frames start at
+		private void connect() throws IOException {
+			channel = SocketChannel.open();
+			channel.socket().connect(address, HANDSHAKE_TIMEOUT_MS);
+			channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+			channel.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+			channel.socket().setSoTimeout(HANDSHAKE_TIMEOUT_MS);
+			writeFully(ByteBuffer.wrap(PeerFrameCodec.encodeHello(String.valueOf(serverPort), epoch)));
+			long delivered = new DataInputStream(channel.socket().getInputStream()).readLong();
+
+			while (retainedFrom < delivered && !retained.isEmpty()) {
+				retainedBytes -= retained.removeFirst().length;
+				retainedFrom++;
+			}
+			if (retainedFrom > delivered) {
+				log.error("Lost {} frames to {} beyond the replay window, starting a new session",
+						retainedFrom - delivered, address);
+				peerMetrics.recordFailure("tcp-lost", peer);
+				closeChannel();
+				epoch = ThreadLocalRandom.current().nextLong();
+				retained.clear();
+				retainedBytes = 0;
+				retainedFrom = 0;
+				resyncPending = true;
+				connect();
+				return;
+			}
+			writeFully(ByteBuffer.allocate(8).putLong(retainedFrom).flip());
+			write(retained);
+			log.info("Connected to peer {}, resent {} frames", address, retained.size());
+			if (resyncPending) {
+				resyncPending = false;
+				LamportMutexService mutex = lamportMutexService.getIfAvailable();
+				if (mutex != null) {
+					mutex.resync(String.valueOf(address.getPort() - portOffset));
+				}
+			}
+		}
+
+		// Notices an idle connection the peer closed
+		private void probe() throws IOException {
+			channel.configureBlocking(false);
+			try {
+				if (channel.read(ByteBuffer.allocate(1)) < 0) {
+					throw new EOFException("Connection closed by peer");
+				}
+			} finally {
+				channel.configureBlocking(true);
+			}
+		}
+
+		private void write(Collection<byte[]> frames) throws IOException {
+			for (byte[] frame : frames) {
+				if (frame.length > writeBuffer.remaining()) {
+					flush();
+				}
+				if (frame.length > writeBuffer.capacity()) {
+					writeFully(ByteBuffer.wrap(frame));
+				} else {
+					writeBuffer.put(frame);
+				}
+			}
+			flush();
+		}
+
+		// Oldest first, written or not; the handshake tells whether the peer missed any
+		private void trimRetained() {
+			while (retainedBytes > replayWindowBytes && retained.size() > 1) {
+				retainedBytes -= retained.removeFirst().length;
+				retainedFrom++;
+			}
+		}
+
+		private void flush() throws IOException {
+			writeBuffer.flip();
+			writeFully(writeBuffer);
+			writeBuffer.clear();
+		}
+
+		private void writeFully(ByteBuffer buffer) throws IOException {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		}
+
+		private void closeChannel() {
+			if (channel == null) {
+				return;
+			}
+			try {
+				channel.close();
+			} catch (IOException e) {
+				log.error("Failed to close connection to {}", address, e);
+			}
+			channel = null;
+		}
+
+		void close() {
+			writer.interrupt();
+			closeChannel();
+		}
+	}
+}
@@ -0,0 +1,208 @@
+package com.cs271.pa1.service;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import com.cs271.pa1.dto.BlockDto;
+import com.cs271.pa1.dto.BlockHash;
+import com.cs271.pa1.dto.TransactionDto;
+import com.cs271.pa1.store.Ledger;
+
+// Hashes a fixed binary encoding of a block
+public final class BlockHasher {
+	private static final byte LEAF = 0;
+	private static final byte NODE = 1;
+
+	private static final ThreadLocal<State> STATE = ThreadLocal.withInitial(State::new);
+
+	private BlockHasher() {
+	}
+
+	public static BlockHash hash(BlockDto block) {
+		ByteBuffer buffer = buffer(maxEncodedSize(block));
+		encode(block, buffer);
+		return digest(buffer);
+	}
+
+	// The hash of a batched block from its header alone, which is all an inclusion proof carries
+	public static BlockHash hashHeader(Long timestamp, BlockHash previousBlockHash, int transactionCount,
+			BlockHash merkleRoot) {
+		ByteBuffer buffer = buffer(128);
+		encodePrefix(timestamp, previousBlockHash, buffer);
+		encodeMerkleHeader(transactionCount, merkleRoot, buffer);
+		return digest(buffer);
+	}
+
+	// A Merkle leaf: the transaction's encoding behind a prefix no inner node uses
+	static BlockHash hashLeaf(TransactionDto transaction) {
+		ByteBuffer buffer = buffer(1 + maxEncodedSize(transaction));
+		buffer.put(LEAF);
+		encodeTransaction(transaction, buffer);
+		return digest(buffer);
+	}
+
+	static BlockHash hashNode(BlockHash left, BlockHash right) {
+		ByteBuffer buffer = buffer(1 + 2 * BlockHash.BYTES);
+		buffer.put(NODE);
+		left.write(buffer);
+		right.write(buffer);
+		return digest(buffer);
+	}
+
+	private static ByteBuffer buffer(int maxSize) {
+		State state = STATE.get();
+		if (state.buffer.capacity() < maxSize) {
+			state.buffer = ByteBuffer.allocate(Integer.highestOneBit(maxSize) << 1);
+		}
+		state.buffer.clear();
+		return state.buffer;
+	}
+
+	private static BlockHash digest(ByteBuffer buffer) {
+		State state = STATE.get();
+		try {
+			state.digest.update(buffer.array(), 0, buffer.position());
+			state.digest.digest(state.output, 0, BlockHash.BYTES);
+		} catch (DigestException e) {
+			throw new IllegalStateException("SHA-256 digest failed", e);
+		}
+		return BlockHash.fromBytes(state.output, 0);
+	}
+
+	private static int maxEncodedSize(BlockDto block) {
+		TransactionDto op = block.getOperation();
+		return op == null ? 128 : maxEncodedSize(op);
+	}
+
+	private static int maxEncodedSize(TransactionDto op) {
+		int strings = op.getSender().length() + op.getReceiver().length()
+				+ (op.getTransactionId() == null ? 0 : op.getTransactionId().length());
+		return 128 + strings * 3 + op.getAmount().precision();
+	}
+
+	static void encode(BlockDto block, ByteBuffer buffer) {
+		encodePrefix(block.getTimestamp(), block.getCurrentBlockHash(), buffer);
+		if (block.getMerkleRoot() != null) {
+			encodeMerkleHeader(block.getTransactions().size(), block.getMerkleRoot(), buffer);
+			return;
+		}
+		TransactionDto op = block.getOperation();
+		if (op == null) {
+			buffer.put((byte) 0);
+			return;
+		}
+		buffer.put((byte) 1);
+		encodeTransaction(op, buffer);
+	}
+
+	private static void encodePrefix(Long timestamp, BlockHash previousBlockHash, ByteBuffer buffer) {
+		buffer.putLong(timestamp == null ? 0 : timestamp);
+		if (previousBlockHash == null) {
+			buffer.put((byte) 0);
+		} else {
+			buffer.put((byte) 1);
+			previousBlockHash.write(buffer);
+		}
+	}
+
+	private static void encodeMerkleHeader(int transactionCount, BlockHash merkleRoot, ByteBuffer buffer) {
+		buffer.put((byte) 2);
+		buffer.putInt(transactionCount);
+		merkleRoot.write(buffer);
+	}
+
+	private static void encodeTransaction(TransactionDto op, ByteBuffer buffer) {
+		putString(buffer, op.getSender());
+		putString(buffer, op.getReceiver());
+		putAmount(buffer, op.getAmount());
+		buffer.putLong(op.getTimestamp() == null ? 0 : op.getTimestamp());
+		putTransactionId(buffer, op.getTransactionId());
+	}
+
+	private static void putString(ByteBuffer buffer, String value) {
+		int length = value.length();
+		int lengthPosition = buffer.position();
+		buffer.putShort((short) 0);
+		for (int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+			if (c >= 0x80) {
+				// Rare non-ASCII names take the allocating path
+				buffer.position(lengthPosition + 2);
+				byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+				buffer.put(bytes);
+				buffer.putShort(lengthPosition, (short) bytes.length);
+				return;
+			}
+			buffer.put((byte) c);
+		}
+		buffer.putShort(lengthPosition, (short) length);
+	}
+
+	// Amounts that fit the ledger hash as minor units; anything finer or larger by scale and bytes
+	private static void putAmount(ByteBuffer buffer, BigDecimal amount) {
+		if (amount.scale() <= Ledger.SCALE && amount.precision() - amount.scale() + Ledger.SCALE <= 18) {
+			buffer.put((byte) 0);
+			buffer.putLong(amount.movePointRight(Ledger.SCALE).longValueExact());
+		} else {
+			byte[] unscaled = amount.unscaledValue().toByteArray();
+			buffer.put((byte) unscaled.length);
+			buffer.putInt(amount.scale());
+			buffer.put(unscaled);
+		}
+	}
+
+	// Canonical UUIDs are packed into 16 bytes; anything else is hashed as text
+	private static void putTransactionId(ByteBuffer buffer, String transactionId) {
+		if (transactionId == null) {
+			buffer.put((byte) 0);
+		} else if (isCanonicalUuid(transactionId)) {
+			buffer.put((byte) 1);
+			buffer.putLong(parseHex(transactionId, 0, 8) << 32 | parseHex(transactionId, 9, 4) << 16
+					| parseHex(transactionId, 14, 4));
+			buffer.putLong(parseHex(transactionId, 19, 4) << 48 | parseHex(transactionId, 24, 12));
+		} else {
+			buffer.put((byte) 2);
+			putString(buffer, transactionId);
+		}
+	}
+
+	private static boolean isCanonicalUuid(String value) {
+		if (value.length() != 36) {
+			return false;
+		}
+		for (int i = 0; i < 36; i++) {
+			char c = value.charAt(i);
+			boolean dash = i == 8 || i == 13 || i == 18 || i == 23;
+			if (dash ? c != '-' : !((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f'))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static long parseHex(String value, int offset, int length) {
+		long result = 0;
+		for (int i = offset; i < offset + length; i++) {
+			result = (result << 4) | Character.digit(value.charAt(i), 16);
+		}
+		return result;
+	}
+
+	private static final class State {
+		private final MessageDigest digest;
+		private ByteBuffer buffer = ByteBuffer.allocate(1024);
+		private final byte[] output = new byte[BlockHash.BYTES];
+
+		private State() {
+			try {
+				digest = MessageDigest.getInstance("SHA-256");
+			} catch (NoSuchAlgorithmException e) {
+				throw new RuntimeException("SHA-256 algorithm not available", e);
+			}
+		}
+	}
+}
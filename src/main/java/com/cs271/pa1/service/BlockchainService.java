@@ -1,99 +1,720 @@
 package com.cs271.pa1.service;
 
 import java.math.BigDecimal;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.time.Instant;
-import java.util.LinkedList;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import com.cs271.pa1.dto.BlockDto;
+import com.cs271.pa1.dto.BlockHash;
+import com.cs271.pa1.dto.CheckpointDto;
+import com.cs271.pa1.dto.ColdTierDto;
+import com.cs271.pa1.dto.InclusionProofDto;
 import com.cs271.pa1.dto.TransactionDto;
-import com.cs271.pa1.proxy.ClientProxy;
-
+import com.cs271.pa1.dto.VerificationResultDto;
+import com.cs271.pa1.proxy.BlockTransport;
+import com.cs271.pa1.store.BlockLog;
+import com.cs271.pa1.store.BlockStreamCodec;
+import com.cs271.pa1.store.CheckpointStore;
+import com.cs271.pa1.store.ColdBlockStore;
+import com.cs271.pa1.store.Ledger;
+import com.cs271.pa1.store.ChainStore;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
 @Service
 public class BlockchainService {
+	private static final List<String> DEFAULT_ACCOUNTS = List.of("A", "B", "C");
 	private static final BigDecimal INITIAL_BALANCE = BigDecimal.valueOf(10);
-	private final LinkedList<BlockDto> blockchain = new LinkedList<>();
-	private final Map<String, BigDecimal> balanceTable = new ConcurrentHashMap<>();
+	private static final int PRINT_LIMIT = 100;
+	// Replaced in init when older blocks spill to the cold tier
+	private ChainStore blockchain = new ChainStore();
+	private final Ledger balanceTable = new Ledger();
+	private final ReservationLedger reservations = new ReservationLedger();
+
+	@Autowired
+	private DistributedMutex mutexService;
+
+	@Autowired
+	private BlockTransport clientProxy;
+
+	@Autowired
+	private BlockLog blockLog;
+
+	@Autowired
+	private CheckpointStore checkpointStore;
 
 	@Autowired
-	private LamportMutexService mutexService;
+	private ColdBlockStore coldBlockStore;
 
 	@Autowired
-	private ClientProxy clientProxy;
+	private MeterRegistry meterRegistry;
+
+	@Autowired
+	private ClientPortService clientPortService;
+
+	@Value("${mutex.acquire-timeout-ms:60000}")
+	private long acquireTimeoutMs;
+
+	@Value("${blockchain.verify-on-startup:true}")
+	private boolean verifyOnStartup;
+
+	@Value("${blockchain.group-commit.enabled:false}")
+	private boolean groupCommitEnabled;
+
+	@Value("${blockchain.group-commit.batch-size:32}")
+	private int groupCommitBatchSize;
+
+	@Value("${blockchain.group-commit.linger-ms:5}")
+	private long groupCommitLingerMs;
+
+	@Value("${blockchain.accounts:A,B,C}")
+	private List<String> accounts;
+
+	// global takes the whole ledger for every transfer, account locks only the sender and receiver
+	@Value("${mutex.scope:global}")
+	private String mutexScope;
+
+	@Value("${broadcast.mode:all}")
+	private String broadcastMode;
+
+	// Blocks ride on the Lamport release instead of a separate broadcast
+	@Value("${mutex.coalescing.enabled:false}")
+	private boolean coalescing;
+
+	private boolean accountScope;
+
+	// Chain height the previous holder released at
+	private boolean fenced;
+
+	private final LockOrderMerger merger = new LockOrderMerger(this::appendMerged);
+
+	// Blocks that arrived ahead of their height
+	private final TreeMap<Integer, BlockDto> reorderBuffer = new TreeMap<>();
+
+	private ScheduledExecutorService replicationScheduler;
+
+	private ScheduledFuture<?> gapCheck;
+
+	// Height a fenced holder is waiting to reach, guarded by reorderBuffer
+	private int catchUpHeight;
+
+	// Set past a rejected block until the next catch-up pass, guarded by reorderBuffer
+	private int rejectedHeight;
+
+	// A height gap still open after this long is fetched from a peer
+	@Value("${blockchain.replication.gap-timeout-ms:5000}")
+	private long gapTimeoutMs;
+
+	// Local callers queue here for the mutex
+	private final ReentrantLock localRequests = new ReentrantLock(true);
+
+	private final ChainVerifier chainVerifier = new ChainVerifier(ForkJoinPool.commonPool());
+
+	private final BlockingQueue<PendingTransaction> submissionQueue = new LinkedBlockingQueue<>();
+
+	private Thread committerThread;
+
+	private volatile boolean running = true;
+
+	private Timer acquireTimer;
+
+	private Timer holdTimer;
+
+	private DistributionSummary blockTransactions;
 
 	public BlockchainService() {
 		initializeBalanceTable();
 	}
 
-	private void initializeBalanceTable() {
-		balanceTable.put("A", INITIAL_BALANCE);
-		balanceTable.put("B", INITIAL_BALANCE);
-		balanceTable.put("C", INITIAL_BALANCE);
+	@PostConstruct
+	public void init() {
+		if (coldBlockStore.isEnabled()) {
+			blockchain = new ChainStore(coldBlockStore);
+		}
+		acquireTimer = Timer.builder("mutex.acquire").description("Time from mutex request to critical section entry")
+				.publishPercentileHistogram().register(meterRegistry);
+		holdTimer = Timer.builder("mutex.hold").description("Time spent inside the critical section")
+				.publishPercentileHistogram().register(meterRegistry);
+		blockTransactions = DistributionSummary.builder("blockchain.block.transactions")
+				.description("Transactions committed per block").register(meterRegistry);
+		Gauge.builder("blockchain.height", blockchain, ChainStore::size).register(meterRegistry);
+		Gauge.builder("replication.reorder.buffered", reorderBuffer, TreeMap::size)
+				.description("Blocks waiting for an earlier height").register(meterRegistry);
+		replicationScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "replication");
+			thread.setDaemon(true);
+			return thread;
+		});
+		initializeBalanceTable();
+		initCoalescing();
+		initScope();
+		recoverChain();
+		if (verifyOnStartup) {
+			verifyOnStartup();
+		}
+		startCommitter();
 	}
 
-	public boolean initiateTransaction(TransactionDto transaction) {
-		mutexService.requestMutex();
+	private void initCoalescing() {
+		if (!coalescing) {
+			return;
+		}
+		if (!(mutexService instanceof CoalescingMutex)) {
+			throw new IllegalStateException("mutex.coalescing.enabled requires mutex.algorithm=lamport");
+		}
+		coalescingMutex().setBlockReceiver(this::receiveBlock);
+	}
+
+	private CoalescingMutex coalescingMutex() {
+		return (CoalescingMutex) mutexService;
+	}
+
+	private void initScope() {
+		accountScope = "account".equalsIgnoreCase(mutexScope.trim());
+		if (!accountScope) {
+			initFence();
+			return;
+		}
+		if (!(mutexService instanceof ResourceMutex)) {
+			throw new IllegalStateException("mutex.scope=account requires mutex.algorithm=lamport");
+		}
+		if (groupCommitEnabled) {
+			throw new IllegalStateException("mutex.scope=account does not support group commit");
+		}
+		// Merging needs the acknowledged broadcast
+		if (coalescing) {
+			throw new IllegalStateException("mutex.scope=account does not support mutex.coalescing");
+		}
+		// A release must not overtake its block at any peer, so every broadcast has to be acknowledged
+		if (!"all".equalsIgnoreCase(broadcastMode.trim())) {
+			throw new IllegalStateException("mutex.scope=account requires broadcast.mode=all");
+		}
+		resourceMutex().addReleaseListener((processId, timestamp) -> {
+			synchronized (merger) {
+				merger.resolve(processId, timestamp);
+				checkpointIfMerged();
+			}
+		});
+		log.info("Locking sender and receiver accounts instead of the whole ledger");
+	}
+
+	private ResourceMutex resourceMutex() {
+		return (ResourceMutex) mutexService;
+	}
+
+	// Wait until every peer may have the latest block
+	private void initFence() {
+		if (coalescing) {
+			return;
+		}
+		if (mutexService instanceof FencedMutex) {
+			fencedMutex().setReleaseHeight(this::getChainHeight);
+			fenced = true;
+		} else if (!"all".equalsIgnoreCase(broadcastMode.trim())) {
+			throw new IllegalStateException("broadcast.mode=" + broadcastMode.trim() + " requires mutex.algorithm=lamport");
+		}
+	}
+
+	private FencedMutex fencedMutex() {
+		return (FencedMutex) mutexService;
+	}
+
+	private void recoverChain() {
+		if (!blockLog.isEnabled()) {
+			return;
+		}
+		CheckpointDto checkpoint = checkpointStore.loadLatest().orElse(null);
+		ColdTierDto tier = checkpoint == null || !coldBlockStore.isEnabled() ? null : checkpoint.getCold();
+		long recovered;
 		try {
-			while (!mutexService.canEnterCriticalSection()) {
-				Thread.sleep(1000);
+			recovered = replayChain(checkpoint, tier);
+		} catch (IllegalStateException | UncheckedIOException e) {
+			if (tier == null) {
+				throw e;
 			}
-			mutexService.enterCriticalSection();
-			log.info("Initiating transaction: {}", transaction);
+			log.warn("Cannot reopen the cold tier recorded at height {}, rebuilding it from the block log",
+					checkpoint.getHeight(), e);
+			blockchain.clear();
+			recovered = replayChain(checkpoint, null);
+		}
 
-			if (!validateTransaction(transaction)) {
-				log.warn("Transaction validation failed: {}", transaction);
+		if (checkpoint != null && !matchesChain(checkpoint)) {
+			log.warn("Checkpoint at height {} does not match the chain, replaying all balances",
+					checkpoint.getHeight());
+			rebuildBalances();
+		} else if (checkpoint != null) {
+			log.info("Restored balances from checkpoint at height {}", checkpoint.getHeight());
+		}
+		log.info("Recovered {} blocks from block store", recovered);
+	}
+
+	// Reopen a recorded cold tier instead of decoding it
+	private long replayChain(CheckpointDto checkpoint, ColdTierDto tier) {
+		int replayFrom = checkpoint == null ? 0 : checkpoint.getHeight();
+		if (checkpoint == null) {
+			initializeBalanceTable();
+		} else {
+			loadBalances(checkpoint.getBalances());
+		}
+		int boundary = 0;
+		if (tier != null) {
+			blockchain.restoreCold(tier);
+			boundary = blockchain.size();
+			if (boundary > replayFrom) {
+				throw new IllegalStateException("Cold tier extends past its checkpoint at height " + replayFrom);
+			}
+		}
+		int coldBoundary = boundary;
+		long recovered = blockLog.replay(boundary, block -> {
+			if (tier != null && blockchain.size() == coldBoundary
+					&& !tier.getBoundaryHash().equals(block.getCurrentBlockHash())) {
+				throw new IllegalStateException("Block log does not continue the cold tier at height " + coldBoundary);
+			}
+			int height = blockchain.append(block);
+			block.setHeight(height);
+			if (height >= replayFrom) {
+				updateBalances(block);
+			}
+		});
+		if (recovered < boundary) {
+			throw new IllegalStateException("Block log ends at " + recovered + ", before the cold tier's " + boundary);
+		}
+		return recovered;
+	}
+
+	private boolean matchesChain(CheckpointDto checkpoint) {
+		if (checkpoint.getHeight() == 0) {
+			return true;
+		}
+		return blockchain.getByHeight(checkpoint.getHeight() - 1)
+				.map(block -> generateBlockHash(block).equals(checkpoint.getHeadHash())).orElse(false);
+	}
+
+	private void rebuildBalances() {
+		initializeBalanceTable();
+		for (int from = 0; from < blockchain.size(); from += 8192) {
+			blockchain.range(from, 8192).forEach(this::updateBalances);
+		}
+	}
+
+	// Balances are captured on the applying thread so they match the height exactly
+	private void checkpointIfDue() {
+		int height = blockchain.size();
+		if (!checkpointStore.isDue(height)) {
+			return;
+		}
+		CheckpointDto checkpoint = CheckpointDto.builder().height(height)
+				.headHash(generateBlockHash(blockchain.head())).timestamp(Instant.now().toEpochMilli())
+				.balances(balanceTable.snapshot()).cold(blockchain.coldTier()).build();
+		checkpointStore.saveAsync(checkpoint);
+	}
+
+	public Optional<CheckpointDto> getLatestCheckpoint() {
+		return checkpointStore.getLatest();
+	}
+
+	private void verifyOnStartup() {
+		VerificationResultDto result = verifyChain();
+		if (result.isValid()) {
+			log.info("Chain of {} blocks verified in {} ms", result.getHeight(), result.getDurationMs());
+		} else {
+			log.error("Chain verification failed: {}", result.getErrors());
+		}
+	}
+
+	public VerificationResultDto verifyChain() {
+		return chainVerifier.verify(blockchain, initialBalances());
+	}
+
+	private void startCommitter() {
+		if (!groupCommitEnabled) {
+			return;
+		}
+		committerThread = new Thread(this::runCommitter, "group-committer");
+		committerThread.setDaemon(true);
+		committerThread.start();
+		log.info("Group commit enabled (batch size: {}, linger: {} ms)", groupCommitBatchSize, groupCommitLingerMs);
+	}
+
+	@PreDestroy
+	public void stopCommitter() {
+		replicationScheduler.shutdownNow();
+		running = false;
+		if (committerThread != null) {
+			committerThread.interrupt();
+		}
+	}
+
+	private void initializeBalanceTable() {
+		loadBalances(initialBalances());
+	}
+
+	private void loadBalances(Map<String, BigDecimal> balances) {
+		balanceTable.clear();
+		balances.forEach((account, balance) -> balanceTable.set(balanceTable.accountId(account),
+				Ledger.toMinorUnits(balance)));
+	}
+
+	private Map<String, BigDecimal> initialBalances() {
+		return getAccounts().stream()
+				.collect(Collectors.toMap(account -> account, account -> INITIAL_BALANCE));
+	}
+
+	public boolean initiateTransaction(TransactionDto transaction) {
+		if (groupCommitEnabled) {
+			return submitTransaction(transaction).join();
+		}
+		if (!admit(transaction)) {
+			return false;
+		}
+
+		localRequests.lock();
+		try {
+			long enteredAt;
+			try {
+				enteredAt = acquireMutex(accountScope ? lockedAccounts(transaction) : null);
+			} catch (Exception e) {
+				log.error("Transaction processing error", e);
+				countTransfer("error");
 				return false;
 			}
+			try {
+				return commitTransaction(transaction);
+			} finally {
+				releaseMutex(enteredAt, localRequests.hasQueuedThreads());
+			}
+		} finally {
+			localRequests.unlock();
+			releaseReservation(transaction);
+		}
+	}
 
-			BlockDto newBlock = createBlock(transaction);
-			blockchain.addFirst(newBlock);
+	public CompletableFuture<Boolean> submitTransaction(TransactionDto transaction) {
+		if (!groupCommitEnabled) {
+			return CompletableFuture.completedFuture(initiateTransaction(transaction));
+		}
+		// Like the transfers still queued at shutdown, one submitted after it is not committed
+		if (!running) {
+			log.warn("Group committer is shut down, not committing {}", transaction);
+			return CompletableFuture.completedFuture(false);
+		}
+		if (!admit(transaction)) {
+			return CompletableFuture.completedFuture(false);
+		}
+		PendingTransaction pending = new PendingTransaction(transaction, new CompletableFuture<>());
+		pending.result().whenComplete((committed, e) -> releaseReservation(transaction));
+		submissionQueue.add(pending);
+		// The committer may have drained the queue for the last time since the check above
+		if (!running && submissionQueue.remove(pending)) {
+			pending.result().complete(false);
+		}
+		return pending.result();
+	}
 
-			clientProxy.broadcastBlock(newBlock);
+	// Refuse transfers the sender cannot cover right now
+	private boolean admit(TransactionDto transaction) {
+		BigDecimal amount = transaction.getAmount();
+		int sender = amount != null && amount.signum() > 0 && Ledger.isRepresentable(amount)
+				? balanceTable.findAccount(transaction.getSender())
+				: -1;
+		if (sender < 0 || !reservations.tryReserve(transaction, Ledger.toMinorUnits(amount),
+				() -> balanceTable.balance(sender))) {
+			log.warn("Transaction refused at admission: {}", transaction);
+			countTransfer("refused");
+			return false;
+		}
+		return true;
+	}
 
-			updateBalances(transaction);
+	// Free reservations of transfers that never ran
+	private void releaseReservation(TransactionDto transaction) {
+		reservations.release(transaction);
+	}
 
-			log.info("Transaction successful: {}", transaction);
-			return true;
+	private void runCommitter() {
+		while (running) {
+			List<PendingTransaction> batch;
+			try {
+				batch = nextBatch();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+			commitBatch(batch);
+		}
+		failPending(submissionQueue);
+	}
+
+	private List<PendingTransaction> nextBatch() throws InterruptedException {
+		List<PendingTransaction> batch = new ArrayList<>(groupCommitBatchSize);
+		batch.add(submissionQueue.take());
+
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(groupCommitLingerMs);
+		while (batch.size() < groupCommitBatchSize) {
+			submissionQueue.drainTo(batch, groupCommitBatchSize - batch.size());
+			long remaining = deadline - System.nanoTime();
+			if (batch.size() >= groupCommitBatchSize || remaining <= 0) {
+				break;
+			}
+			PendingTransaction next = submissionQueue.poll(remaining, TimeUnit.NANOSECONDS);
+			if (next == null) {
+				break;
+			}
+			batch.add(next);
+		}
+		return batch;
+	}
+
+	private void commitBatch(List<PendingTransaction> batch) {
+		long enteredAt;
+		try {
+			enteredAt = acquireMutex(null);
 		} catch (Exception e) {
-			log.error("Transaction processing error", e);
-			return false;
+			log.error("Failed to acquire mutex for batch of {} transactions", batch.size(), e);
+			batch.forEach(pending -> {
+				countTransfer("error");
+				pending.result().complete(false);
+			});
+			return;
+		}
+		log.info("Committing batch of {} transactions", batch.size());
+		try {
+			List<Boolean> committed = commitTransactions(
+					batch.stream().map(PendingTransaction::transaction).collect(Collectors.toList()));
+			for (int i = 0; i < batch.size(); i++) {
+				batch.get(i).result().complete(committed.get(i));
+			}
 		} finally {
+			releaseMutex(enteredAt, !submissionQueue.isEmpty());
+		}
+	}
+
+	private void failPending(BlockingQueue<PendingTransaction> queue) {
+		List<PendingTransaction> remaining = new ArrayList<>();
+		queue.drainTo(remaining);
+		remaining.forEach(pending -> pending.result().complete(false));
+	}
+
+	// Lock both accounts in sorted order
+	private List<String> lockedAccounts(TransactionDto transaction) {
+		return Stream.of(transaction.getSender(), transaction.getReceiver()).distinct().sorted()
+				.collect(Collectors.toList());
+	}
+
+	// Returns the nanoTime of critical section entry so the hold time can be recorded on release
+	private long acquireMutex(List<String> resources) throws InterruptedException {
+		long requestedAt = System.nanoTime();
+		if (resources == null) {
+			mutexService.requestMutex();
+		} else {
+			resourceMutex().requestMutex(resources);
+		}
+		boolean acquired = false;
+		try {
+			acquired = mutexService.acquire(acquireTimeoutMs, TimeUnit.MILLISECONDS);
+		} finally {
+			if (!acquired) {
+				mutexService.cancelRequest();
+			}
+		}
+		if (!acquired) {
+			throw new IllegalStateException("Timed out waiting for critical section");
+		}
+		long enteredAt = System.nanoTime();
+		acquireTimer.record(enteredAt - requestedAt, TimeUnit.NANOSECONDS);
+		return enteredAt;
+	}
+
+	// More work queued, so the release can ride on the next request
+	private void releaseMutex(long enteredAt, boolean moreQueued) {
+		if (coalescing && moreQueued) {
+			coalescingMutex().releaseBeforeRequest();
+		} else {
 			mutexService.releaseMutex();
 		}
+		holdTimer.record(System.nanoTime() - enteredAt, TimeUnit.NANOSECONDS);
+	}
+
+	private void countTransfer(String outcome) {
+		meterRegistry.counter("transfers", "outcome", outcome).increment();
+	}
+
+	private boolean commitTransaction(TransactionDto transaction) {
+		return commitTransactions(List.of(transaction)).get(0);
+	}
+
+	// Commit the valid transactions as one block
+	private List<Boolean> commitTransactions(List<TransactionDto> transactions) {
+		if (fenced && !awaitReleasedHeight()) {
+			transactions.forEach(transaction -> {
+				countTransfer("error");
+				releaseReservation(transaction);
+			});
+			return new ArrayList<>(Collections.nCopies(transactions.size(), false));
+		}
+		List<Boolean> committed = new ArrayList<>(transactions.size());
+		List<TransactionDto> valid = new ArrayList<>(transactions.size());
+		Map<String, Long> batchDelta = new HashMap<>();
+		for (TransactionDto transaction : transactions) {
+			log.info("Initiating transaction: {}", transaction);
+			if (!validateTransaction(transaction, batchDelta)) {
+				log.warn("Transaction validation failed: {}", transaction);
+				countTransfer("rejected");
+				releaseReservation(transaction);
+				committed.add(false);
+				continue;
+			}
+			long amount = Ledger.toMinorUnits(transaction.getAmount());
+			batchDelta.merge(transaction.getSender(), -amount, Long::sum);
+			batchDelta.merge(transaction.getReceiver(), amount, Long::sum);
+			valid.add(transaction);
+			committed.add(true);
+		}
+		if (valid.isEmpty()) {
+			return committed;
+		}
+
+		BlockDto newBlock;
+		try {
+			newBlock = createBlock(valid);
+			if (accountScope) {
+				// Chain position comes from the merge order
+				newBlock.setLock(resourceMutex().currentRequest());
+				newBlock.setDependencies(resourceMutex().pendingBefore());
+				mergeBlock(newBlock);
+			} else if (!receiveInOrder(newBlock)) {
+				throw new IllegalStateException("Block at height " + newBlock.getHeight() + " was not applied");
+			}
+		} catch (Exception e) {
+			log.error("Transaction processing error", e);
+			valid.forEach(transaction -> {
+				countTransfer("error");
+				releaseReservation(transaction);
+			});
+			committed.replaceAll(success -> false);
+			return committed;
+		}
+
+		// Committed locally even if too few peers acknowledged
+		try {
+			broadcastBlock(newBlock);
+		} catch (Exception e) {
+			log.warn("Block at height {} committed with degraded replication: {}", newBlock.getHeight(),
+					e.getMessage());
+			meterRegistry.counter("broadcast.degraded").increment();
+		}
+
+		blockTransactions.record(valid.size());
+		for (TransactionDto transaction : valid) {
+			log.info("Transaction successful: {}", transaction);
+			countTransfer("success");
+		}
+		return committed;
 	}
 
-	private boolean validateTransaction(TransactionDto transaction) {
-		BigDecimal senderBalance = balanceTable.getOrDefault(transaction.getSender(), BigDecimal.ZERO);
+	// Wait for the previous holder's blocks
+	private boolean awaitReleasedHeight() {
+		int height = fencedMutex().getReleasedHeight();
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(acquireTimeoutMs);
+		synchronized (reorderBuffer) {
+			while (blockchain.size() < height) {
+				catchUpHeight = Math.max(catchUpHeight, height);
+				scheduleGapCheck();
+				long remaining = deadline - System.nanoTime();
+				if (remaining <= 0) {
+					log.error("Timed out catching up from height {} to {}", blockchain.size(), height);
+					return false;
+				}
+				try {
+					TimeUnit.NANOSECONDS.timedWait(reorderBuffer, remaining);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return false;
+				}
+			}
+		}
+		return true;
+	}
 
-		return senderBalance.compareTo(transaction.getAmount()) >= 0
-				&& transaction.getAmount().compareTo(BigDecimal.ZERO) > 0;
+	private void broadcastBlock(BlockDto block) {
+		if (coalescing) {
+			coalescingMutex().attachBlock(block);
+			return;
+		}
+		clientProxy.broadcastBlock(block);
+		meterRegistry.counter("protocol.messages", "type", "block")
+				.increment(clientPortService.getClientPorts().size());
+	}
+
+	boolean validateTransaction(TransactionDto transaction) {
+		return validateTransaction(transaction, Map.of());
 	}
 
-	private void updateBalances(TransactionDto transaction) {
-		String sender = transaction.getSender();
-		String receiver = transaction.getReceiver();
+	private boolean validateTransaction(TransactionDto transaction, Map<String, Long> batchDelta) {
 		BigDecimal amount = transaction.getAmount();
+		if (amount == null || amount.signum() <= 0 || !Ledger.isRepresentable(amount)) {
+			return false;
+		}
+		int sender = balanceTable.findAccount(transaction.getSender());
+		return sender >= 0 && balanceTable.balance(sender)
+				+ batchDelta.getOrDefault(transaction.getSender(), 0L) >= Ledger.toMinorUnits(amount);
+	}
+
+	private void updateBalances(BlockDto block) {
+		block.operations().forEach(this::updateBalances);
+	}
 
-		balanceTable.put(sender, balanceTable.get(sender).subtract(amount));
+	void updateBalances(TransactionDto transaction) {
+		reservations.settle(transaction, () -> balanceTable.transfer(balanceTable.accountId(transaction.getSender()),
+				balanceTable.accountId(transaction.getReceiver()), Ledger.toMinorUnits(transaction.getAmount())));
+	}
 
-		balanceTable.merge(receiver, amount, BigDecimal::add);
+	BlockDto createBlock(TransactionDto transaction) {
+		return createBlock(List.of(transaction));
 	}
 
-	private BlockDto createBlock(TransactionDto transaction) {
-		BlockDto block = BlockDto.builder().operation(transaction).timestamp(Instant.now().toEpochMilli()).build();
+	BlockDto createBlock(List<TransactionDto> transactions) {
+		BlockDto block = BlockDto.builder().transactions(new ArrayList<>(transactions))
+				.merkleRoot(MerkleTree.root(transactions)).timestamp(Instant.now().toEpochMilli()).build();
 
-		if (!blockchain.isEmpty()) {
-			BlockDto previousBlock = blockchain.getFirst();
+		if (!accountScope) {
+			block.setHeight(blockchain.size());
+		}
+		BlockDto previousBlock = blockchain.head();
+		if (previousBlock != null) {
 			block.setCurrentBlockHash(generateBlockHash(previousBlock));
 		} else {
 			block.setCurrentBlockHash(null);
@@ -102,52 +723,245 @@ public class BlockchainService {
 		return block;
 	}
 
-	private String generateBlockHash(BlockDto block) {
-		try {
-			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+	BlockHash generateBlockHash(BlockDto block) {
+		return BlockHasher.hash(block);
+	}
 
-			String operationString = Optional.ofNullable(block.getOperation())
-					.map(op -> op.getSender() + op.getReceiver() + op.getAmount().toString()).orElse("");
+	public void receiveBlock(BlockDto block) {
+		if (block.getLock() != null) {
+			synchronized (merger) {
+				if (merger.contains(block.getLock()) || isDuplicate(block)) {
+					log.info("Ignoring duplicate block for lock {}", block.getLock());
+					return;
+				}
+				mergeBlock(block);
+			}
+			return;
+		}
+		// Background broadcast retries may deliver the same block twice
+		if (isDuplicate(block)) {
+			log.info("Ignoring duplicate block for transaction {}",
+					block.operations().get(0).getTransactionId());
+			return;
+		}
+		if (block.getHeight() == null) {
+			// Sent by a node that predates heights
+			synchronized (reorderBuffer) {
+				applyBlock(block);
+			}
+			return;
+		}
+		receiveInOrder(block);
+	}
 
-			String hashInput = operationString;
-			if (block.getCurrentBlockHash() != null) {
-				hashInput += block.getCurrentBlockHash();
+	// True when the block itself was applied
+	private boolean receiveInOrder(BlockDto block) {
+		synchronized (reorderBuffer) {
+			int height = blockchain.size();
+			if (block.getHeight() < height) {
+				log.info("Ignoring block at height {}, chain is at {}", block.getHeight(), height);
+				return false;
 			}
+			if (block.getHeight() > height) {
+				reorderBuffer.put(block.getHeight(), block);
+				scheduleGapCheck();
+				return false;
+			}
+			if (!applyBlock(block)) {
+				return false;
+			}
+			BlockDto next;
+			while ((next = reorderBuffer.remove(blockchain.size())) != null) {
+				applyBlock(next);
+			}
+			reorderBuffer.headMap(blockchain.size()).clear();
+			return true;
+		}
+	}
 
-			byte[] hashBytes = digest.digest(hashInput.getBytes());
-			StringBuilder hexString = new StringBuilder();
-			for (byte b : hashBytes) {
-				String hex = Integer.toHexString(0xff & b);
-				if (hex.length() == 1) {
-					hexString.append('0');
+	// Reject a block that does not link to the head
+	private boolean applyBlock(BlockDto block) {
+		BlockDto head = blockchain.head();
+		BlockHash expected = head == null ? null : generateBlockHash(head);
+		if (!Objects.equals(expected, block.getCurrentBlockHash())) {
+			log.warn("Rejecting block at height {}, it does not link to the head", block.getHeight());
+			meterRegistry.counter("replication.rejected").increment();
+			if (block.getHeight() != null) {
+				rejectedHeight = Math.max(rejectedHeight, block.getHeight() + 1);
+				scheduleGapCheck();
+			}
+			return false;
+		}
+		appendBlock(block);
+		updateBalances(block);
+		checkpointIfDue();
+		reorderBuffer.notifyAll();
+		return true;
+	}
+
+	private void scheduleGapCheck() {
+		if (gapCheck == null || gapCheck.isDone()) {
+			gapCheck = replicationScheduler.schedule(this::closeGap, gapTimeoutMs, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	// Runs on the replication thread, so only one catch-up is in flight at a time
+	private void closeGap() {
+		for (int port : clientPortService.getClientPorts()) {
+			int from;
+			synchronized (reorderBuffer) {
+				if (!isBehind()) {
+					return;
 				}
-				hexString.append(hex);
+				from = blockchain.size();
 			}
-			return hexString.toString();
+			try {
+				// Counted per block, so the metric covers a stream that breaks off part way
+				Counter catchUp = meterRegistry.counter("replication.catchup.blocks");
+				int fetched = clientProxy.fetchBlocks(port, from, block -> {
+					catchUp.increment();
+					receiveInOrder(block);
+				});
+				log.info("Fetched {} blocks from height {} from peer {}", fetched, from, port);
+			} catch (Exception e) {
+				log.warn("Failed to fetch blocks from height {} from peer {}: {}", from, port, e.getMessage());
+			}
+		}
+		synchronized (reorderBuffer) {
+			// A peer holding the block that links would have supplied it in this pass
+			rejectedHeight = 0;
+			if (isBehind()) {
+				scheduleGapCheck();
+			}
+		}
+	}
+
+	private boolean isBehind() {
+		return !reorderBuffer.isEmpty() || blockchain.size() < Math.max(catchUpHeight, rejectedHeight);
+	}
 
-		} catch (NoSuchAlgorithmException e) {
-			throw new RuntimeException("SHA-256 algorithm not available", e);
+	// Writes the blocks from fromHeight up to the current head as a BlockStreamCodec stream
+	public void streamBlocks(int fromHeight, OutputStream out) throws IOException {
+		int toHeight = blockchain.size();
+		try (BlockStreamCodec.Writer writer = new BlockStreamCodec.Writer(out, fromHeight)) {
+			for (int from = fromHeight; from < toHeight; from += 8192) {
+				for (BlockDto block : blockchain.range(from, Math.min(8192, toHeight - from))) {
+					writer.write(block);
+				}
+			}
 		}
 	}
 
-	public void receiveBlock(BlockDto block) {
-		blockchain.add(0, block);
-		updateBalances(block.getOperation());
+	// A block's transactions are committed together, so its first one identifies it
+	private boolean isDuplicate(BlockDto block) {
+		List<TransactionDto> operations = block.operations();
+		String transactionId = operations.isEmpty() ? null : operations.get(0).getTransactionId();
+		return transactionId != null && blockchain.getByTransactionId(transactionId).isPresent();
+	}
+
+	// Apply balances as soon as a block is known
+	private void mergeBlock(BlockDto block) {
+		synchronized (merger) {
+			updateBalances(block);
+			merger.add(block);
+			checkpointIfMerged();
+		}
+	}
+
+	private void appendMerged(BlockDto block) {
+		block.setCurrentBlockHash(blockchain.isEmpty() ? null : generateBlockHash(blockchain.head()));
+		appendBlock(block);
+	}
+
+	// The ledger is only at a chain height once no merged block is still pending
+	private void checkpointIfMerged() {
+		if (merger.isEmpty()) {
+			checkpointIfDue();
+		}
+	}
+
+	private void appendBlock(BlockDto block) {
+		if (blockLog.isEnabled()) {
+			blockLog.append(block);
+		}
+		blockchain.append(block);
 	}
 
 	public BigDecimal checkBalance(String clientName) {
-		return balanceTable.getOrDefault(clientName, BigDecimal.ZERO);
+		return Ledger.toDecimal(balanceTable.balance(clientName));
+	}
+
+	public List<String> getAccounts() {
+		return accounts == null ? DEFAULT_ACCOUNTS : accounts;
+	}
+
+	public int getChainHeight() {
+		return blockchain.size();
+	}
+
+	public List<BlockDto> getBlocks(int fromHeight, int limit) {
+		return blockchain.range(fromHeight, limit);
+	}
+
+	public Optional<BlockDto> getBlockByHeight(int height) {
+		return blockchain.getByHeight(height);
+	}
+
+	public Optional<BlockDto> getBlockByHash(BlockHash hash) {
+		Optional<BlockDto> block = blockchain.getByHash(hash);
+		if (block.isPresent()) {
+			return block;
+		}
+		// The head's hash is not indexed until a successor links to it
+		BlockDto head = blockchain.head();
+		return head != null && hash.equals(generateBlockHash(head)) ? Optional.of(head) : Optional.empty();
+	}
+
+	public Optional<BlockDto> getBlockByTransactionId(String transactionId) {
+		return blockchain.getByTransactionId(transactionId);
+	}
+
+	// Empty for unknown transactions and for blocks written before batching, which have no root
+	public Optional<InclusionProofDto> getInclusionProof(String transactionId) {
+		Optional<Integer> height = blockchain.getHeightByTransactionId(transactionId);
+		Optional<BlockDto> block = height.flatMap(blockchain::getByHeight);
+		if (block.isEmpty() || block.get().getMerkleRoot() == null) {
+			return Optional.empty();
+		}
+		List<TransactionDto> transactions = block.get().getTransactions();
+		int index = 0;
+		while (!transactionId.equals(transactions.get(index).getTransactionId())) {
+			index++;
+		}
+		return Optional.of(InclusionProofDto.builder().transaction(transactions.get(index)).height(height.get())
+				.index(index).transactionCount(transactions.size()).leafHash(MerkleTree.leaf(transactions.get(index)))
+				.path(MerkleTree.proof(transactions, index)).merkleRoot(block.get().getMerkleRoot())
+				.blockTimestamp(block.get().getTimestamp()).previousBlockHash(block.get().getCurrentBlockHash())
+				.blockHash(generateBlockHash(block.get())).build());
+	}
+
+	public List<BlockDto> getAccountHistory(String account, int offset, int limit) {
+		return blockchain.accountHistory(account, offset, limit);
+	}
+
+	public int getAccountHistorySize(String account) {
+		return blockchain.accountHistorySize(account);
 	}
 
 	public void printBlockchain() {
 		System.out.println("Current Blockchain State:");
 		System.out.println("Blockchain Size: " + blockchain.size());
-		blockchain.forEach(block -> log.info("Block: {}", block));
+		// Older blocks may only be on disk, and reading them all would evict the block cache
+		System.out.println("Newest " + Math.min(PRINT_LIMIT, blockchain.size()) + " blocks:");
+		blockchain.forEachNewestFirst(PRINT_LIMIT, block -> log.info("Block: {}", block));
 	}
 
 	public void printBalanceTable() {
 		System.out.println("Current Balance Table:");
-		balanceTable.forEach((k, v) -> System.out.println((k + ":" + v)));
+		balanceTable.snapshot().forEach((k, v) -> System.out.println((k + ":" + v)));
+	}
+
+	private record PendingTransaction(TransactionDto transaction, CompletableFuture<Boolean> result) {
 	}
 
 }
\ No newline at end of file
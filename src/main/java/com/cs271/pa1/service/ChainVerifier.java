@@ -0,0 +1,152 @@
+package com.cs271.pa1.service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import com.cs271.pa1.dto.BlockDto;
+import com.cs271.pa1.dto.BlockHash;
+import com.cs271.pa1.dto.TransactionDto;
+import com.cs271.pa1.dto.VerificationResultDto;
+import com.cs271.pa1.store.ChainStore;
+
+// Checks hash links and balances over height ranges in parallel
+public class ChainVerifier {
+	private static final int RANGE_SIZE = 8192;
+	private static final int MAX_ERRORS = 100;
+
+	private final ForkJoinPool pool;
+
+	public ChainVerifier(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	public VerificationResultDto verify(ChainStore chain, Map<String, BigDecimal> initialBalances) {
+		long start = System.nanoTime();
+		int height = chain.size();
+		RangeResult result = pool.invoke(new RangeTask(chain, 0, height));
+
+		List<String> errors = new ArrayList<>(result.errors);
+		Map<String, BigDecimal> balances = new HashMap<>(initialBalances);
+		result.delta.forEach((account, delta) -> balances.merge(account, delta, BigDecimal::add));
+
+		boolean overdrawn = result.minimum.entrySet().stream().anyMatch(e -> initialBalances
+				.getOrDefault(e.getKey(), BigDecimal.ZERO).add(e.getValue()).signum() < 0);
+		if (overdrawn) {
+			errors.addAll(findOverdrafts(chain, height, initialBalances));
+		}
+
+		return VerificationResultDto.builder().valid(errors.isEmpty()).height(height)
+				.durationMs((System.nanoTime() - start) / 1_000_000)
+				.errors(errors.size() > MAX_ERRORS ? errors.subList(0, MAX_ERRORS) : errors).balances(balances)
+				.build();
+	}
+
+	private List<String> findOverdrafts(ChainStore chain, int height, Map<String, BigDecimal> initialBalances) {
+		List<String> errors = new ArrayList<>();
+		Map<String, BigDecimal> balances = new HashMap<>(initialBalances);
+		for (int from = 0; from < height && errors.size() < MAX_ERRORS; from += RANGE_SIZE) {
+			List<BlockDto> blocks = chain.range(from, RANGE_SIZE);
+			for (int i = 0; i < blocks.size(); i++) {
+				for (TransactionDto op : blocks.get(i).operations()) {
+					BigDecimal balance = balances.merge(op.getSender(), op.getAmount().negate(), BigDecimal::add);
+					balances.merge(op.getReceiver(), op.getAmount(), BigDecimal::add);
+					if (balance.signum() < 0) {
+						errors.add("Account " + op.getSender() + " overdrawn to " + balance + " at height " + (from + i));
+					}
+				}
+			}
+		}
+		return errors;
+	}
+
+	private static class RangeResult {
+		private final List<String> errors = new ArrayList<>();
+		// Net change per account over the range
+		private final Map<String, BigDecimal> delta = new HashMap<>();
+		// Lowest running change per account at any point in the range
+		private final Map<String, BigDecimal> minimum = new HashMap<>();
+
+		private void addError(String error) {
+			if (errors.size() < MAX_ERRORS) {
+				errors.add(error);
+			}
+		}
+
+		private void apply(String account, BigDecimal change) {
+			BigDecimal running = delta.merge(account, change, BigDecimal::add);
+			minimum.merge(account, running, BigDecimal::min);
+		}
+
+		private RangeResult combine(RangeResult right) {
+			right.errors.forEach(this::addError);
+			right.minimum.forEach((account, rightMinimum) -> minimum.merge(account,
+					delta.getOrDefault(account, BigDecimal.ZERO).add(rightMinimum), BigDecimal::min));
+			right.delta.forEach((account, rightDelta) -> delta.merge(account, rightDelta, BigDecimal::add));
+			return this;
+		}
+	}
+
+	private static class RangeTask extends RecursiveTask<RangeResult> {
+		private final ChainStore chain;
+		private final int from;
+		private final int to;
+
+		RangeTask(ChainStore chain, int from, int to) {
+			this.chain = chain;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected RangeResult compute() {
+			if (to - from <= RANGE_SIZE) {
+				return verifyRange();
+			}
+			int middle = (from + to) >>> 1;
+			RangeTask left = new RangeTask(chain, from, middle);
+			RangeTask right = new RangeTask(chain, middle, to);
+			right.fork();
+			RangeResult leftResult = left.compute();
+			return leftResult.combine(right.join());
+		}
+
+		private RangeResult verifyRange() {
+			RangeResult result = new RangeResult();
+			int first = Math.max(0, from - 1);
+			List<BlockDto> blocks = chain.range(first, to - first);
+			for (int i = from - first; i < blocks.size(); i++) {
+				int height = first + i;
+				BlockDto block = blocks.get(i);
+
+				BlockHash expected = height == 0 ? null : BlockHasher.hash(blocks.get(i - 1));
+				if (expected == null ? block.getCurrentBlockHash() != null
+						: !expected.equals(block.getCurrentBlockHash())) {
+					result.addError("Broken hash link at height " + height);
+				}
+
+				List<TransactionDto> operations = block.operations();
+				if (operations.isEmpty()) {
+					result.addError("Missing transaction at height " + height);
+					continue;
+				}
+				if (block.getMerkleRoot() != null && !block.getMerkleRoot().equals(MerkleTree.root(operations))) {
+					result.addError("Merkle root mismatch at height " + height);
+				}
+				for (TransactionDto op : operations) {
+					if (op.getAmount() == null || op.getAmount().signum() <= 0) {
+						result.addError("Non-positive amount at height " + height);
+						continue;
+					}
+					result.apply(op.getSender(), op.getAmount().negate());
+					result.apply(op.getReceiver(), op.getAmount());
+				}
+			}
+			return result;
+		}
+	}
+}
@@ -12,7 +12,8 @@ public class ClientPortService {
 	@Value("${server.port}")
 	private Integer serverPort;
 
-	private final List<Integer> clientPorts = List.of(8080, 8081, 8082);
+	@Value("${cluster.ports:8080,8081,8082}")
+	private List<Integer> clientPorts;
 
 	public List<Integer> getClientPorts() {
 		List<Integer> ports = new ArrayList<Integer>(clientPorts);
@@ -0,0 +1,18 @@
+package com.cs271.pa1.service;
+
+import java.util.function.Consumer;
+
+import com.cs271.pa1.dto.BlockDto;
+
+// A DistributedMutex that combines messages to the same peer
+public interface CoalescingMutex extends DistributedMutex {
+
+	// Sends the block to every peer with this critical section's release
+	void attachBlock(BlockDto block);
+
+	// Releases, holding the release back until this node's next request when it follows shortly
+	void releaseBeforeRequest();
+
+	// Applies blocks that arrive with a peer's release
+	void setBlockReceiver(Consumer<BlockDto> receiver);
+}
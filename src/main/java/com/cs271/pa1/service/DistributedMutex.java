@@ -0,0 +1,18 @@
+package com.cs271.pa1.service;
+
+import java.util.concurrent.TimeUnit;
+
+public interface DistributedMutex {
+
+	String getProcessId();
+
+	void requestMutex();
+
+	boolean acquire(long timeout, TimeUnit unit) throws InterruptedException;
+
+	void releaseMutex();
+
+	void cancelRequest();
+
+	boolean isInCriticalSection();
+}
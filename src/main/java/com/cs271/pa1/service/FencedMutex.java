@@ -0,0 +1,13 @@
+package com.cs271.pa1.service;
+
+import java.util.function.IntSupplier;
+
+// A DistributedMutex whose releases carry the chain height
+public interface FencedMutex extends DistributedMutex {
+
+	// Read at every release of this node and sent with it
+	void setReleaseHeight(IntSupplier height);
+
+	// Highest chain height a peer has released at
+	int getReleasedHeight();
+}
@@ -1,138 +1,274 @@
 package com.cs271.pa1.service;
 
-import java.util.Collections;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 
+import com.cs271.pa1.dto.BlockDto;
+import com.cs271.pa1.dto.LamportMessage;
 import com.cs271.pa1.dto.Request;
-import com.cs271.pa1.proxy.LamportProxy;
+import com.cs271.pa1.proxy.LamportTransport;
 
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 
 @Service
 @Slf4j
-public class LamportMutexService {
+@ConditionalOnProperty(name = "mutex.algorithm", havingValue = "lamport", matchIfMissing = true)
+public class LamportMutexService implements ResourceMutex, CoalescingMutex, FencedMutex {
 	@Autowired
-	private LamportProxy lamportProxy;
+	private LamportTransport lamportProxy;
 
 	@Autowired
 	private ClientPortService clientPortService;
 
+	@Autowired
+	private MeterRegistry meterRegistry;
+
 	@Value("${server.port}")
 	private String processId;
 
-	private long lamportClock = 0;
+	// Combine messages to the same peer
+	@Value("${mutex.coalescing.enabled:false}")
+	private boolean coalescing;
+
+	// Longest a release waits for the next request before it is sent on its own
+	@Value("${mutex.coalescing.max-hold-ms:2}")
+	private long maxHoldMs;
+
+	private final AtomicLong lamportClock = new AtomicLong();
 
-	private final PriorityBlockingQueue<Request> requestQueue = new PriorityBlockingQueue<>();
+	private final RequestQueue requestQueue = new RequestQueue();
 
-	private final ConcurrentHashMap<String, Set<String>> replyTracker = new ConcurrentHashMap<>();
+	// Our outstanding request and the processes that replied to it
+	private final AtomicReference<PendingRequest> pending = new AtomicReference<>();
 
-	private final Set<String> otherProcesses = Collections.synchronizedSet(new HashSet<>());
+	private final Set<String> otherProcesses = ConcurrentHashMap.newKeySet();
 	private final Map<String, String> processUrls = new ConcurrentHashMap<>();
 
-	private volatile boolean inCriticalSection = false;
+	private final AtomicBoolean inCriticalSection = new AtomicBoolean();
+
+	private final List<BiConsumer<String, Long>> releaseListeners = new CopyOnWriteArrayList<>();
+
+	// Stamps and queues our outbound messages in order
+	private final ReentrantLock outboundLock = new ReentrantLock();
+	private final PeerOutbox outbox = new PeerOutbox();
+
+	// Bumped by every reply and release, so a waiter that checked before one arrived looks again
+	private final AtomicLong stateVersion = new AtomicLong();
+	private final AtomicInteger waiters = new AtomicInteger();
+	private final ReentrantLock waitLock = new ReentrantLock();
+	private final Condition stateChanged = waitLock.newCondition();
+
+	// Replies deferred until our release, guarded by outboundLock
+	private final Set<String> deferredReplies = new HashSet<>();
+	private List<BlockDto> heldBlocks = new ArrayList<>();
+	private Long heldRelease;
+	private ScheduledFuture<?> heldFlush;
+
+	private ScheduledExecutorService flusher;
+
+	private Consumer<BlockDto> blockReceiver;
+
+	// Set when releases carry this node's chain height, see FencedMutex
+	private IntSupplier releaseHeight;
+
+	private final AtomicInteger releasedHeight = new AtomicInteger();
 
 	@PostConstruct
 	public void init() {
 		for (Integer port : clientPortService.getClientPorts()) {
 			registerProcess(port + "", "http://localhost:" + port);
 		}
+		Gauge.builder("mutex.clock", lamportClock, AtomicLong::get).tag("algorithm", "lamport")
+				.register(meterRegistry);
+		Gauge.builder("mutex.queue.depth", requestQueue, RequestQueue::size).register(meterRegistry);
+		if (coalescing) {
+			flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "lamport-flusher");
+				thread.setDaemon(true);
+				return thread;
+			});
+			log.info("Coalescing Lamport messages (max hold: {} ms)", maxHoldMs);
+		}
 	}
 
+	@PreDestroy
+	public void stop() {
+		if (flusher != null) {
+			flusher.shutdownNow();
+		}
+	}
+
+	@Override
 	public String getProcessId() {
 		return processId;
 	}
 
-	public synchronized long incrementClock() {
-		return ++lamportClock;
+	public long incrementClock() {
+		return lamportClock.incrementAndGet();
 	}
 
-	public synchronized void updateClock(long receivedTimestamp) {
-		lamportClock = Math.max(lamportClock, receivedTimestamp) + 1;
+	public void updateClock(long receivedTimestamp) {
+		lamportClock.accumulateAndGet(receivedTimestamp, (current, received) -> Math.max(current, received) + 1);
 	}
 
+	@Override
 	public void requestMutex() {
-		long currentTimestamp = incrementClock();
-		Request request = new Request();
-		request.setTimestamp(currentTimestamp);
-		request.setProcessId(processId);
-		synchronized (this) {
-			if (inCriticalSection) {
-				throw new IllegalStateException("Already in critical section");
-			}
+		requestMutex(null);
+	}
+
+	@Override
+	public void requestMutex(List<String> resources) {
+		if (inCriticalSection.get()) {
+			throw new IllegalStateException("Already in critical section");
+		}
+		outboundLock.lock();
+		try {
+			Request request = Request.of(incrementClock(), processId);
+			request.setResources(resources);
 			requestQueue.add(request);
-			log.info("Request mutex after adding to queue {}", requestQueue);
+			pending.set(new PendingRequest(request));
 			log.info("Added request to queue: {}", request);
 
-			replyTracker.put(processId, Collections.synchronizedSet(new HashSet<>()));
+			log.info("Broadcasting request to all");
+			if (coalescing) {
+				queueFlush(request);
+			} else {
+				for (Map.Entry<String, String> peer : processUrls.entrySet()) {
+					countMessage("request");
+					queueSend(peer.getKey(), peer.getValue(), () -> sendCarrying(request, () -> lamportProxy.sendRequest(peer.getValue(), request)));
+				}
+			}
+		} finally {
+			outboundLock.unlock();
 		}
+		outbox.send();
+	}
 
-		log.info("Broadcasting request to all");
-
-		for (String url : processUrls.values()) {
-			log.info("sending request to {}", url);
-			try {
-				lamportProxy.sendRequest(url, request);
-			} catch (Exception e) {
-				log.error("Failed to send request to {}: {}", url, e.getMessage());
+	// A peer that never sees the request never replies, so the acquire fails instead of waiting
+	private void sendCarrying(Request request, Runnable send) {
+		try {
+			send.run();
+		} catch (RuntimeException e) {
+			PendingRequest mine = pending.get();
+			if (mine != null && request != null && mine.request == request) {
+				mine.failed = true;
+				stateChanged();
 			}
+			throw e;
 		}
 	}
 
 	public void receiveRequest(Request request) {
-		synchronized (this) {
-			log.info("Received request from process {}: {}", request.getProcessId(), request);
-
-			updateClock(request.getTimestamp());
+		log.info("Received request from process {}: {}", request.getProcessId(), request);
+
+		updateClock(request.getTimestamp());
+		requestQueue.add(request);
+		log.debug("receive Request after adding to queue {}", requestQueue);
+
+		String url = "http://localhost:" + request.getProcessId();
+		outboundLock.lock();
+		try {
+			// The requester cannot enter before our release anyway, so the reply rides on it
+			if (coalescing && holdsEarlierConflicting(request)) {
+				deferredReplies.add(request.getProcessId());
+			} else {
+				long timestamp = lamportClock.get();
+				countMessage("reply");
+				queueSend(request.getProcessId(), url, () -> lamportProxy.sendReply(url, processId, timestamp));
+			}
+		} finally {
+			outboundLock.unlock();
+		}
+		outbox.send(request.getProcessId());
+	}
 
-			requestQueue.add(request);
-			log.info("receive Request after adding to queue {}", requestQueue);
+	private boolean holdsEarlierConflicting(Request request) {
+		PendingRequest mine = pending.get();
+		return mine != null && mine.request.compareTo(request) < 0 && mine.request.conflictsWith(request);
+	}
 
-			lamportProxy.sendReply("http://localhost:" + request.getProcessId(), processId, lamportClock);
+	// A peer's messages arrive on one delivery thread, so the parts apply in order without a lock
+	public void receiveMessage(LamportMessage message) {
+		if (!message.getBlocks().isEmpty()) {
+			if (blockReceiver == null) {
+				throw new IllegalStateException("No block receiver for blocks from " + message.getProcessId());
+			}
+			message.getBlocks().forEach(blockReceiver);
+		}
+		if (message.getReleaseHeight() != null) {
+			releasedHeight.accumulateAndGet(message.getReleaseHeight(), Math::max);
+		}
+		if (message.getRelease() != null) {
+			receiveRelease(message.getProcessId(), message.getRelease());
+		}
+		if (message.getRequest() != null) {
+			receiveRequest(message.getRequest());
+		}
+		if (message.isReply()) {
+			receiveReply(message.getProcessId(), message.getTimestamp());
 		}
 	}
 
-	public synchronized void receiveReply(String fromProcessId, long timestamp) {
+	public void receiveReply(String fromProcessId, long timestamp) {
 		log.info("Received reply from process: {}", fromProcessId);
 
 		updateClock(timestamp);
 
-		Set<String> replies = replyTracker.get(processId);
-		if (replies != null) {
-			replies.add(fromProcessId);
-			log.info("Added reply from {} to tracker. Total replies: {}", fromProcessId, replies.size());
+		// Ignore replies older than our request
+		PendingRequest mine = pending.get();
+		if (mine != null && timestamp > mine.request.getTimestamp()) {
+			mine.replies.add(fromProcessId);
+			log.info("Added reply from {} to tracker. Total replies: {}", fromProcessId, mine.replies.size());
 		}
+		stateChanged();
 	}
 
-	public synchronized boolean canEnterCriticalSection() {
-		if (inCriticalSection) {
+	public boolean canEnterCriticalSection() {
+		if (inCriticalSection.get()) {
 			return false;
 		}
 
-		log.info("Can enter critical section: {}", requestQueue);
+		log.debug("Can enter critical section: {}", requestQueue);
 
-		// Get the earliest request in queue
-		Request myRequest = requestQueue.stream().filter(r -> r.getProcessId().equals(processId)).findFirst()
-				.orElse(null);
+		PendingRequest mine = pending.get();
 
-		if (myRequest == null) {
+		if (mine == null) {
 			return false;
 		}
 
-		// Ensure our request is at the front of the queue
-		boolean earliestRequest = requestQueue.peek().equals(myRequest);
+		// Ensure no earlier conflicting request is queued
+		boolean earliestRequest = !requestQueue.hasEarlierConflicting(mine.request);
 
 		// Ensure we received replies from all processes
-		Set<String> replies = replyTracker.get(processId);
-		boolean allRepliesReceived = replies != null && replies.size() >= otherProcesses.size();
+		boolean allRepliesReceived = mine.replies.size() >= otherProcesses.size();
 
 		boolean canEnter = earliestRequest && allRepliesReceived;
 		log.info("Can enter critical section: {} (earliest: {}, allReplies: {})", canEnter, earliestRequest,
@@ -141,46 +277,295 @@ public class LamportMutexService {
 		return canEnter;
 	}
 
-	public synchronized void enterCriticalSection() {
-		if (!canEnterCriticalSection()) {
+	@Override
+	public boolean acquire(long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		waiters.incrementAndGet();
+		try {
+			while (true) {
+				long version = stateVersion.get();
+				PendingRequest mine = pending.get();
+				if (mine != null && mine.failed) {
+					return false;
+				}
+				if (tryEnter()) {
+					return true;
+				}
+				long remaining = deadline - System.nanoTime();
+				if (remaining <= 0) {
+					return false;
+				}
+				waitLock.lock();
+				try {
+					while (stateVersion.get() == version && remaining > 0) {
+						remaining = stateChanged.awaitNanos(remaining);
+					}
+				} finally {
+					waitLock.unlock();
+				}
+			}
+		} finally {
+			waiters.decrementAndGet();
+		}
+	}
+
+	public void enterCriticalSection() {
+		if (!tryEnter()) {
 			throw new IllegalStateException("Cannot enter critical section");
 		}
-		inCriticalSection = true;
+	}
+
+	private boolean tryEnter() {
+		if (!canEnterCriticalSection() || !inCriticalSection.compareAndSet(false, true)) {
+			return false;
+		}
 		log.info("Entered critical section");
+		return true;
 	}
 
-	public synchronized void releaseMutex() {
-		if (!inCriticalSection) {
-			throw new IllegalStateException("Not in critical section");
+	// Signal waiters
+	private void stateChanged() {
+		stateVersion.incrementAndGet();
+		if (waiters.get() > 0) {
+			waitLock.lock();
+			try {
+				stateChanged.signalAll();
+			} finally {
+				waitLock.unlock();
+			}
 		}
+	}
 
-		// Remove request from queue
-		requestQueue.removeIf(r -> r.getProcessId().equals(processId));
+	@Override
+	public void releaseMutex() {
+		release(false);
+	}
 
-		// Clear reply tracker
-		replyTracker.remove(processId);
+	@Override
+	public void releaseBeforeRequest() {
+		release(coalescing);
+	}
 
+	private void release(boolean hold) {
 		// Reset critical section flag
-		inCriticalSection = false;
+		if (!inCriticalSection.compareAndSet(true, false)) {
+			throw new IllegalStateException("Not in critical section");
+		}
 
-		// Broadcast release message
-		long timestamp = incrementClock();
-		for (String url : processUrls.values()) {
+		withdrawRequest(hold);
+		log.info("Released critical section lamport clock: {}", lamportClock.get());
+	}
+
+	@Override
+	public void cancelRequest() {
+		if (inCriticalSection.get()) {
+			throw new IllegalStateException("Already in critical section");
+		}
+		withdrawRequest(false);
+		log.info("Cancelled pending mutex request");
+	}
+
+	private void withdrawRequest(boolean hold) {
+		outboundLock.lock();
+		try {
+			// Remove request from queue and clear reply tracker
+			requestQueue.removeProcess(processId);
+			pending.set(null);
+
+			// Run listeners, then broadcast release message
+			long timestamp = incrementClock();
+			releaseListeners.forEach(listener -> listener.accept(processId, timestamp));
+			if (coalescing) {
+				heldRelease = timestamp;
+				if (hold) {
+					heldFlush = flusher.schedule(this::flushHeld, maxHoldMs, TimeUnit.MILLISECONDS);
+				} else {
+					queueFlush(null);
+				}
+			} else if (releaseHeight != null) {
+				// The height goes in a combined message, which every transport carries
+				LamportMessage message = new LamportMessage();
+				message.setProcessId(processId);
+				message.setTimestamp(timestamp);
+				message.setRelease(timestamp);
+				message.setReleaseHeight(releaseHeight.getAsInt());
+				for (Map.Entry<String, String> peer : processUrls.entrySet()) {
+					countMessage(message);
+					queueSend(peer.getKey(), peer.getValue(), () -> lamportProxy.sendMessage(peer.getValue(), message));
+				}
+			} else {
+				for (Map.Entry<String, String> peer : processUrls.entrySet()) {
+					countMessage("release");
+					queueSend(peer.getKey(), peer.getValue(),
+							() -> lamportProxy.sendRelease(peer.getValue(), processId, timestamp));
+				}
+			}
+		} finally {
+			outboundLock.unlock();
+		}
+		outbox.send();
+	}
+
+	private void queueSend(String peer, String url, Runnable send) {
+		outbox.add(peer, () -> {
 			try {
-				lamportProxy.sendRelease(url, processId, timestamp);
-				log.info("Sent release to: {}", url);
+				send.run();
 			} catch (Exception e) {
-				log.error("Failed to send release to {}: {}", url, e.getMessage());
+				log.error("Failed to send to {}: {}", url, e.getMessage());
 			}
+		});
+	}
+
+	@Override
+	public void attachBlock(BlockDto block) {
+		if (!coalescing) {
+			throw new IllegalStateException("Blocks only ride on releases with mutex.coalescing.enabled");
+		}
+		if (!inCriticalSection.get()) {
+			throw new IllegalStateException("Not in critical section");
+		}
+		outboundLock.lock();
+		try {
+			heldBlocks.add(block);
+		} finally {
+			outboundLock.unlock();
+		}
+	}
+
+	@Override
+	public void setBlockReceiver(Consumer<BlockDto> receiver) {
+		blockReceiver = receiver;
+	}
+
+	@Override
+	public void setReleaseHeight(IntSupplier height) {
+		releaseHeight = height;
+	}
+
+	@Override
+	public int getReleasedHeight() {
+		return releasedHeight.get();
+	}
+
+	private void flushHeld() {
+		outboundLock.lock();
+		try {
+			queueFlush(null);
+		} finally {
+			outboundLock.unlock();
+		}
+		outbox.send();
+	}
+
+	// Queue one combined message per peer
+	private void queueFlush(Request request) {
+		if (heldRelease == null && request == null) {
+			return;
 		}
-		log.info("Released critical section lamport clock: {}", lamportClock);
+		if (heldFlush != null) {
+			heldFlush.cancel(false);
+			heldFlush = null;
+		}
+		long timestamp = lamportClock.get();
+		for (Map.Entry<String, String> peer : processUrls.entrySet()) {
+			LamportMessage message = new LamportMessage();
+			message.setProcessId(processId);
+			message.setTimestamp(timestamp);
+			message.setBlocks(heldBlocks);
+			message.setRelease(heldRelease);
+			message.setRequest(request);
+			message.setReply(deferredReplies.remove(peer.getKey()));
+			countMessage(message);
+			queueSend(peer.getKey(), peer.getValue(),
+					() -> sendCarrying(request, () -> lamportProxy.sendMessage(peer.getValue(), message)));
+		}
+		heldRelease = null;
+		heldBlocks = new ArrayList<>();
+	}
+
+	private void countMessage(LamportMessage message) {
+		boolean release = message.getRelease() != null;
+		int parts = (release ? 1 : 0) + (message.getRequest() != null ? 1 : 0) + (message.isReply() ? 1 : 0)
+				+ message.getBlocks().size();
+		countMessage(parts > 1 ? "combined" : release ? "release" : "request");
+		countPiggybacked("block", message.getBlocks().size());
+		countPiggybacked("reply", message.isReply() ? 1 : 0);
+		countPiggybacked("request", release && message.getRequest() != null ? 1 : 0);
 	}
 
-	public synchronized void receiveRelease(String fromProcessId, long timestamp) {
+	// Counted per peer, with or without coalescing
+	private void countMessage(String type) {
+		meterRegistry.counter("protocol.messages", "type", type).increment();
+	}
+
+	private void countPiggybacked(String type, int count) {
+		if (count > 0) {
+			meterRegistry.counter("protocol.messages.piggybacked", "type", type).increment(count);
+		}
+	}
+
+	public void receiveRelease(String fromProcessId, long timestamp) {
 		log.info("Received release from process: {}", fromProcessId);
 		updateClock(timestamp);
-		log.info("lamport clock: {}", lamportClock);
-		requestQueue.removeIf(r -> r.getProcessId().equals(fromProcessId));
+		log.info("lamport clock: {}", lamportClock.get());
+		requestQueue.removeProcess(fromProcessId);
+		releaseListeners.forEach(listener -> listener.accept(fromProcessId, timestamp));
+		stateChanged();
+	}
+
+	// Resend our state to a peer that lost messages
+	public void resync(String peerProcessId) {
+		String url = processUrls.get(peerProcessId);
+		if (url == null) {
+			return;
+		}
+		outboundLock.lock();
+		try {
+			PendingRequest mine = pending.get();
+			LamportMessage message = new LamportMessage();
+			message.setProcessId(processId);
+			message.setTimestamp(lamportClock.get());
+			message.setRelease(mine == null ? message.getTimestamp() : mine.request.getTimestamp() - 1);
+			message.setRequest(mine == null ? null : mine.request);
+			if (releaseHeight != null) {
+				message.setReleaseHeight(releaseHeight.getAsInt());
+			}
+			Request theirs = requestQueue.first(peerProcessId);
+			if (theirs != null && coalescing && holdsEarlierConflicting(theirs)) {
+				deferredReplies.add(peerProcessId);
+			} else if (theirs != null) {
+				deferredReplies.remove(peerProcessId);
+				message.setReply(true);
+			}
+			log.warn("Resyncing with process {}: {}", peerProcessId, message);
+			countMessage(message);
+			Request request = mine == null ? null : mine.request;
+			queueSend(peerProcessId, url, () -> sendCarrying(request, () -> lamportProxy.sendMessage(url, message)));
+		} finally {
+			outboundLock.unlock();
+		}
+		outbox.send(peerProcessId);
+	}
+
+	@Override
+	public Request currentRequest() {
+		PendingRequest mine = pending.get();
+		return mine == null ? null : Request.of(mine.request.getTimestamp(), mine.request.getProcessId());
+	}
+
+	@Override
+	public List<Request> pendingBefore() {
+		PendingRequest mine = pending.get();
+		if (mine == null) {
+			throw new IllegalStateException("No outstanding request");
+		}
+		return requestQueue.before(mine.request).stream().filter(r -> !r.getProcessId().equals(processId))
+				.map(r -> Request.of(r.getTimestamp(), r.getProcessId())).collect(Collectors.toList());
+	}
+
+	@Override
+	public void addReleaseListener(BiConsumer<String, Long> listener) {
+		releaseListeners.add(listener);
 	}
 
 	public void registerProcess(String processId, String url) {
@@ -195,7 +580,18 @@ public class LamportMutexService {
 		log.info("Unregistered process {}", processId);
 	}
 
+	@Override
 	public boolean isInCriticalSection() {
-		return inCriticalSection;
+		return inCriticalSection.get();
+	}
+
+	private static class PendingRequest {
+		private final Request request;
+		private final Set<String> replies = ConcurrentHashMap.newKeySet();
+		private volatile boolean failed;
+
+		PendingRequest(Request request) {
+			this.request = request;
+		}
 	}
 }
\ No newline at end of file
@@ -0,0 +1,155 @@
+package com.cs271.pa1.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.cs271.pa1.service.LatencyProperties.Distribution;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+@Service
+public class LatencyInjectionService {
+	@Autowired
+	private LatencyProperties properties;
+
+	// A single delivery thread per peer keeps inbound messages from one peer in order
+	private final Map<String, ScheduledExecutorService> schedulers = new ConcurrentHashMap<>();
+
+	private final Map<String, FifoChannel> fifoChannels = new ConcurrentHashMap<>();
+
+	private final Map<String, long[]> traces = new ConcurrentHashMap<>();
+
+	private final Map<String, AtomicInteger> tracePositions = new ConcurrentHashMap<>();
+
+	@PreDestroy
+	public void shutdown() {
+		schedulers.values().forEach(ScheduledExecutorService::shutdownNow);
+	}
+
+	public CompletableFuture<Void> deliver(String type, String peer, Runnable handler) {
+		return deliver(type, peer, () -> {
+			handler.run();
+			return null;
+		});
+	}
+
+	public <T> CompletableFuture<T> deliver(String type, String peer, Supplier<T> handler) {
+		String peerKey = peer == null ? "unknown" : peer;
+		long delayNanos = TimeUnit.MILLISECONDS.toNanos(sampleDelayMs(type, peerKey));
+		ScheduledExecutorService scheduler = schedulers.computeIfAbsent(peerKey, this::newScheduler);
+
+		CompletableFuture<T> result = new CompletableFuture<>();
+		Runnable task = () -> {
+			try {
+				result.complete(handler.get());
+			} catch (Exception e) {
+				log.error("Failed to handle {} from {}: {}", type, peerKey, e.getMessage());
+				result.completeExceptionally(e);
+			}
+		};
+
+		if (properties.isPreserveFifo()) {
+			FifoChannel channel = fifoChannels.computeIfAbsent(peerKey, k -> new FifoChannel());
+			synchronized (channel) {
+				channel.dueNanos = Math.max(channel.dueNanos, System.nanoTime() + delayNanos);
+				channel.pending.add(task);
+				scheduler.schedule(channel::runNext, Math.max(0, channel.dueNanos - System.nanoTime()),
+						TimeUnit.NANOSECONDS);
+			}
+		} else {
+			scheduler.schedule(task, delayNanos, TimeUnit.NANOSECONDS);
+		}
+		return result;
+	}
+
+	// Run the oldest pending message
+	private static class FifoChannel {
+		private final Queue<Runnable> pending = new ConcurrentLinkedQueue<>();
+		private long dueNanos = Long.MIN_VALUE;
+
+		void runNext() {
+			pending.poll().run();
+		}
+	}
+
+	private ScheduledExecutorService newScheduler(String peer) {
+		return Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "delivery-" + peer);
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	private long sampleDelayMs(String type, String peer) {
+		String key = type + "-" + peer;
+		Distribution distribution = properties.getOverrides().get(key);
+		if (distribution == null) {
+			key = type;
+			distribution = properties.getOverrides().get(key);
+		}
+		if (distribution == null) {
+			key = "peer-" + peer;
+			distribution = properties.getOverrides().get(key);
+		}
+		if (distribution == null) {
+			key = "defaults";
+			distribution = properties.getDefaults();
+		}
+		return sample(key, distribution);
+	}
+
+	private long sample(String key, Distribution distribution) {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		switch (distribution.getMode()) {
+		case "none":
+			return 0;
+		case "fixed":
+			return distribution.getFixedMs();
+		case "uniform":
+			return distribution.getMaxMs() > distribution.getMinMs()
+					? random.nextLong(distribution.getMinMs(), distribution.getMaxMs() + 1)
+					: distribution.getMinMs();
+		case "normal":
+			return Math.max(0,
+					Math.round(distribution.getMeanMs() + random.nextGaussian() * distribution.getStddevMs()));
+		case "trace":
+			long[] trace = traces.computeIfAbsent(key, k -> loadTrace(distribution.getTraceFile()));
+			int position = tracePositions.computeIfAbsent(key, k -> new AtomicInteger()).getAndIncrement();
+			return trace[Math.floorMod(position, trace.length)];
+		default:
+			throw new IllegalArgumentException("Unknown latency mode " + distribution.getMode());
+		}
+	}
+
+	private long[] loadTrace(String traceFile) {
+		try {
+			long[] trace = Files.readAllLines(Paths.get(traceFile)).stream().map(String::trim)
+					.filter(line -> !line.isEmpty() && !line.startsWith("#")).mapToLong(Long::parseLong).toArray();
+			if (trace.length == 0) {
+				throw new IllegalArgumentException("Latency trace " + traceFile + " is empty");
+			}
+			log.info("Loaded {} latency samples from {}", trace.length, traceFile);
+			return trace;
+		} catch (IOException e) {
+			throw new UncheckedIOException("Cannot read latency trace " + traceFile, e);
+		}
+	}
+}
@@ -0,0 +1,35 @@
+package com.cs271.pa1.service;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Data;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "latency")
+public class LatencyProperties {
+	// Keep delivery order per peer even when sampled delays would reorder it
+	private boolean preserveFifo = true;
+
+	private Distribution defaults = new Distribution();
+
+	// Keyed by "<type>-<peer>", "<type>" or "peer-<peer>", most specific first
+	private Map<String, Distribution> overrides = new HashMap<>();
+
+	@Data
+	public static class Distribution {
+		// none | fixed | uniform | normal | trace
+		private String mode = "fixed";
+		private long fixedMs = 3000;
+		private long minMs = 0;
+		private long maxMs = 0;
+		private double meanMs = 0;
+		private double stddevMs = 0;
+		// One delay in milliseconds per line, replayed cyclically
+		private String traceFile;
+	}
+}
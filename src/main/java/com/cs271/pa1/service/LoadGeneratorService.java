@@ -0,0 +1,300 @@
+package com.cs271.pa1.service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+import java.util.zip.DataFormatException;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestTemplate;
+
+import com.cs271.pa1.dto.TransactionDto;
+import com.cs271.pa1.dto.WorkloadReportDto;
+import com.cs271.pa1.store.Ledger;
+
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+@Service
+public class LoadGeneratorService {
+	private static final long HIGHEST_LATENCY_NANOS = TimeUnit.MINUTES.toNanos(10);
+	// Lead time for peers to receive a coordinated run before it starts
+	private static final long COORDINATION_DELAY_MS = 2000;
+
+	@Autowired
+	private BlockchainService blockchainService;
+
+	@Autowired
+	private ClientPortService clientPortService;
+
+	@Value("${server.port}")
+	private String processId;
+
+	@Value("${mutex.acquire-timeout-ms:60000}")
+	private long acquireTimeoutMs;
+
+	private final RestTemplate restTemplate = new RestTemplateBuilder().build();
+
+	// Starts the same workload on every node at one shared start time and merges the reports
+	public WorkloadReportDto runCluster(WorkloadProperties workload) {
+		if (workload.getStartAt() == 0) {
+			workload.setStartAt(System.currentTimeMillis() + COORDINATION_DELAY_MS);
+		}
+		List<CompletableFuture<WorkloadReportDto>> runs = new ArrayList<>();
+		for (int port : clientPortService.getClientPorts()) {
+			runs.add(CompletableFuture.supplyAsync(() -> restTemplate
+					.postForObject("http://localhost:" + port + "/api/load/run", workload, WorkloadReportDto.class)));
+		}
+		runs.add(CompletableFuture.supplyAsync(() -> run(workload)));
+		List<WorkloadReportDto> reports = runs.stream().map(CompletableFuture::join).collect(Collectors.toList());
+		return merge(reports);
+	}
+
+	public WorkloadReportDto run(WorkloadProperties workload) {
+		try {
+			return execute(workload);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Load run interrupted", e);
+		}
+	}
+
+	private WorkloadReportDto execute(WorkloadProperties workload) throws InterruptedException {
+		long delayMs = workload.getStartAt() - System.currentTimeMillis();
+		if (delayMs > 0) {
+			Thread.sleep(delayMs);
+		}
+		log.info("Starting {} load run: {}", workload.getMode(), workload);
+
+		Run run = new Run(workload, blockchainService.getAccounts());
+		if ("open".equalsIgnoreCase(workload.getMode())) {
+			runOpen(run);
+		} else if ("closed".equalsIgnoreCase(workload.getMode())) {
+			runClosed(run);
+		} else {
+			throw new IllegalArgumentException("Unknown load mode " + workload.getMode());
+		}
+
+		WorkloadReportDto report = report(processId, workload.getMode(), run.histogram, run.submitted.sum(),
+				run.committed.sum(), TimeUnit.NANOSECONDS.toMillis(run.end - run.measureFrom));
+		log.info("Load run finished: {}", summary(report));
+		return report;
+	}
+
+	// Each client waits for its transfer before issuing the next
+	private void runClosed(Run run) throws InterruptedException {
+		List<Thread> clients = new ArrayList<>();
+		for (int i = 0; i < run.workload.getClients(); i++) {
+			Random random = run.random(i);
+			Thread client = new Thread(() -> {
+				long started;
+				while ((started = System.nanoTime()) < run.end) {
+					run.execute(started, random);
+				}
+			}, "load-client-" + i);
+			client.setDaemon(true);
+			clients.add(client);
+			client.start();
+		}
+		for (Thread client : clients) {
+			client.join();
+		}
+	}
+
+	// Measure from the intended start
+	private void runOpen(Run run) throws InterruptedException {
+		ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+			Thread thread = new Thread(runnable, "load-open");
+			thread.setDaemon(true);
+			return thread;
+		});
+		long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / run.workload.getRate());
+		Random random = run.random(0);
+		for (long intended = run.start; intended < run.end; intended += intervalNanos) {
+			long wait = intended - System.nanoTime();
+			if (wait > 0) {
+				LockSupport.parkNanos(wait);
+			}
+			long scheduled = intended;
+			TransactionDto transaction = run.nextTransaction(random);
+			executor.execute(() -> run.execute(scheduled, transaction));
+		}
+		executor.shutdown();
+		if (!executor.awaitTermination(acquireTimeoutMs, TimeUnit.MILLISECONDS)) {
+			log.warn("Open-loop transfers still running after the measurement phase");
+		}
+	}
+
+	public WorkloadReportDto merge(List<WorkloadReportDto> reports) {
+		Histogram histogram = new Histogram(HIGHEST_LATENCY_NANOS, 3);
+		long submitted = 0;
+		long committed = 0;
+		long durationMs = 0;
+		for (WorkloadReportDto report : reports) {
+			histogram.add(decode(report.getHistogram()));
+			submitted += report.getSubmitted();
+			committed += report.getCommitted();
+			durationMs = Math.max(durationMs, report.getDurationMs());
+		}
+		WorkloadReportDto merged = report("cluster", reports.get(0).getMode(), histogram, submitted, committed,
+				durationMs);
+		merged.setNodes(reports);
+		log.info("Cluster load run finished: {}", summary(merged));
+		return merged;
+	}
+
+	private static WorkloadReportDto report(String processId, String mode, Histogram histogram, long submitted,
+			long committed, long durationMs) {
+		return WorkloadReportDto.builder().processId(processId).mode(mode).submitted(submitted).committed(committed)
+				.rejected(submitted - committed).durationMs(durationMs)
+				.throughput(durationMs == 0 ? 0 : committed * 1000.0 / durationMs)
+				.p50Ms(millis(histogram.getValueAtPercentile(50))).p99Ms(millis(histogram.getValueAtPercentile(99)))
+				.p999Ms(millis(histogram.getValueAtPercentile(99.9))).maxMs(millis(histogram.getMaxValue()))
+				.histogram(encode(histogram)).build();
+	}
+
+	public static String summary(WorkloadReportDto report) {
+		return String.format("%d of %d transfers committed in %d ms, %.1f/s, p50 %.2f ms, p99 %.2f ms, "
+				+ "p99.9 %.2f ms, max %.2f ms", report.getCommitted(), report.getSubmitted(), report.getDurationMs(),
+				report.getThroughput(), report.getP50Ms(), report.getP99Ms(), report.getP999Ms(), report.getMaxMs());
+	}
+
+	private static double millis(long nanos) {
+		return nanos / 1_000_000.0;
+	}
+
+	private static String encode(Histogram histogram) {
+		ByteBuffer buffer = ByteBuffer.allocate(histogram.getNeededByteBufferCapacity());
+		int length = histogram.encodeIntoCompressedByteBuffer(buffer);
+		return Base64.getEncoder().encodeToString(Arrays.copyOf(buffer.array(), length));
+	}
+
+	private static Histogram decode(String encoded) {
+		try {
+			return Histogram.decodeFromCompressedByteBuffer(ByteBuffer.wrap(Base64.getDecoder().decode(encoded)), 0);
+		} catch (DataFormatException e) {
+			throw new IllegalArgumentException("Malformed latency histogram", e);
+		}
+	}
+
+	// State of one run: phase boundaries, counters and the transfer generator
+	private class Run {
+		private final WorkloadProperties workload;
+		private final List<String> accounts;
+		private final double[] zipfCdf;
+		private final long start = System.nanoTime();
+		private final long measureFrom;
+		private final long end;
+		private final Histogram histogram = new ConcurrentHistogram(HIGHEST_LATENCY_NANOS, 3);
+		private final LongAdder submitted = new LongAdder();
+		private final LongAdder committed = new LongAdder();
+
+		Run(WorkloadProperties workload, List<String> accounts) {
+			if (accounts.size() < 2) {
+				throw new IllegalArgumentException("Load runs need at least two accounts");
+			}
+			this.workload = workload;
+			this.accounts = accounts;
+			this.measureFrom = start + TimeUnit.SECONDS.toNanos(workload.getWarmupSeconds());
+			this.end = measureFrom + TimeUnit.SECONDS.toNanos(workload.getDurationSeconds());
+			this.zipfCdf = zipfCdf(accounts.size(), workload.getZipfExponent());
+		}
+
+		Random random(int client) {
+			return workload.getSeed() == 0 ? new Random(ThreadLocalRandom.current().nextLong())
+					: new Random(workload.getSeed() + client);
+		}
+
+		void execute(long started, Random random) {
+			execute(started, nextTransaction(random));
+		}
+
+		// Only transfers started inside the measurement phase are counted
+		void execute(long started, TransactionDto transaction) {
+			boolean success = blockchainService.submitTransaction(transaction).join();
+			long latency = System.nanoTime() - started;
+			if (started < measureFrom || started >= end) {
+				return;
+			}
+			histogram.recordValue(Math.min(latency, HIGHEST_LATENCY_NANOS));
+			submitted.increment();
+			if (success) {
+				committed.increment();
+			}
+		}
+
+		TransactionDto nextTransaction(Random random) {
+			int sender = nextAccount(random);
+			int receiver = nextAccount(random);
+			while (receiver == sender) {
+				receiver = nextAccount(random);
+			}
+			return TransactionDto.createTransaction(accounts.get(sender), accounts.get(receiver), nextAmount(random));
+		}
+
+		private int nextAccount(Random random) {
+			switch (workload.getAccountDistribution()) {
+			case "uniform":
+				return random.nextInt(accounts.size());
+			case "zipf": {
+				int index = Arrays.binarySearch(zipfCdf, random.nextDouble());
+				return Math.min(index < 0 ? -index - 1 : index, accounts.size() - 1);
+			}
+			case "hot": {
+				int hot = Math.max(1, Math.min(workload.getHotAccounts(), accounts.size() - 1));
+				return random.nextDouble() < workload.getHotFraction() ? random.nextInt(hot)
+						: hot + random.nextInt(accounts.size() - hot);
+			}
+			default:
+				throw new IllegalArgumentException("Unknown account distribution " + workload.getAccountDistribution());
+			}
+		}
+
+		private BigDecimal nextAmount(Random random) {
+			BigDecimal min = workload.getMinAmount();
+			switch (workload.getAmountDistribution()) {
+			case "fixed":
+				return min;
+			case "uniform": {
+				BigDecimal span = workload.getMaxAmount().subtract(min);
+				BigDecimal amount = min.add(span.multiply(BigDecimal.valueOf(random.nextDouble())))
+						.setScale(Ledger.SCALE, RoundingMode.DOWN);
+				return amount.signum() > 0 ? amount : min;
+			}
+			default:
+				throw new IllegalArgumentException("Unknown amount distribution " + workload.getAmountDistribution());
+			}
+		}
+	}
+
+	private static double[] zipfCdf(int size, double exponent) {
+		double[] cdf = new double[size];
+		double total = 0;
+		for (int k = 0; k < size; k++) {
+			total += 1 / Math.pow(k + 1, exponent);
+			cdf[k] = total;
+		}
+		for (int k = 0; k < size; k++) {
+			cdf[k] /= total;
+		}
+		return cdf;
+	}
+}
@@ -0,0 +1,62 @@
+package com.cs271.pa1.service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+import com.cs271.pa1.dto.BlockDto;
+import com.cs271.pa1.dto.Request;
+
+// Appends account-scoped blocks in lock request order
+class LockOrderMerger {
+	private final TreeMap<Request, BlockDto> pending = new TreeMap<>();
+
+	// Highest resolved timestamp per process
+	private final Map<String, Long> resolvedThrough = new HashMap<>();
+
+	private final Consumer<BlockDto> appender;
+
+	LockOrderMerger(Consumer<BlockDto> appender) {
+		this.appender = appender;
+	}
+
+	synchronized boolean contains(Request lock) {
+		return pending.containsKey(lock);
+	}
+
+	synchronized void add(BlockDto block) {
+		pending.put(block.getLock(), block);
+		drain();
+	}
+
+	synchronized void resolve(String processId, long timestamp) {
+		resolvedThrough.merge(processId, timestamp, Math::max);
+		drain();
+	}
+
+	synchronized boolean isEmpty() {
+		return pending.isEmpty();
+	}
+
+	private void drain() {
+		while (!pending.isEmpty()) {
+			BlockDto block = pending.firstEntry().getValue();
+			if (block.getDependencies() != null
+					&& !block.getDependencies().stream().allMatch(this::isResolved)) {
+				return;
+			}
+			pending.pollFirstEntry();
+			appender.accept(block);
+			resolve(block.getLock());
+		}
+	}
+
+	private void resolve(Request request) {
+		resolvedThrough.merge(request.getProcessId(), request.getTimestamp(), Math::max);
+	}
+
+	private boolean isResolved(Request request) {
+		return resolvedThrough.getOrDefault(request.getProcessId(), Long.MIN_VALUE) >= request.getTimestamp();
+	}
+}
@@ -0,0 +1,84 @@
+package com.cs271.pa1.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.cs271.pa1.dto.BlockHash;
+import com.cs271.pa1.dto.InclusionProofDto;
+import com.cs271.pa1.dto.InclusionProofDto.Step;
+import com.cs271.pa1.dto.TransactionDto;
+
+// Binary Merkle tree over a block's transactions
+public final class MerkleTree {
+
+	private MerkleTree() {
+	}
+
+	public static BlockHash root(List<TransactionDto> transactions) {
+		if (transactions.isEmpty()) {
+			throw new IllegalArgumentException("A Merkle root needs at least one transaction");
+		}
+		List<BlockHash> level = leaves(transactions);
+		while (level.size() > 1) {
+			level = parents(level);
+		}
+		return level.get(0);
+	}
+
+	// The sibling hashes from the leaf at index up to the root, at most log2(n) + 1 of them
+	public static List<Step> proof(List<TransactionDto> transactions, int index) {
+		if (index < 0 || index >= transactions.size()) {
+			throw new IndexOutOfBoundsException(index);
+		}
+		List<BlockHash> level = leaves(transactions);
+		List<Step> path = new ArrayList<>();
+		while (level.size() > 1) {
+			int sibling = index ^ 1;
+			if (sibling < level.size()) {
+				path.add(new Step(level.get(sibling), sibling < index));
+			}
+			level = parents(level);
+			index >>>= 1;
+		}
+		return path;
+	}
+
+	public static BlockHash rootFromProof(BlockHash leaf, List<Step> path) {
+		BlockHash hash = leaf;
+		for (Step step : path) {
+			hash = step.isLeft() ? BlockHasher.hashNode(step.getHash(), hash) : BlockHasher.hashNode(hash, step.getHash());
+		}
+		return hash;
+	}
+
+	// Checks a proof against its block hash
+	public static boolean verify(InclusionProofDto proof) {
+		BlockHash leaf = leaf(proof.getTransaction());
+		return leaf.equals(proof.getLeafHash()) && rootFromProof(leaf, proof.getPath()).equals(proof.getMerkleRoot())
+				&& BlockHasher.hashHeader(proof.getBlockTimestamp(), proof.getPreviousBlockHash(),
+						proof.getTransactionCount(), proof.getMerkleRoot()).equals(proof.getBlockHash());
+	}
+
+	public static BlockHash leaf(TransactionDto transaction) {
+		return BlockHasher.hashLeaf(transaction);
+	}
+
+	private static List<BlockHash> leaves(List<TransactionDto> transactions) {
+		List<BlockHash> leaves = new ArrayList<>(transactions.size());
+		for (TransactionDto transaction : transactions) {
+			leaves.add(leaf(transaction));
+		}
+		return leaves;
+	}
+
+	private static List<BlockHash> parents(List<BlockHash> level) {
+		List<BlockHash> parents = new ArrayList<>((level.size() + 1) / 2);
+		for (int i = 0; i + 1 < level.size(); i += 2) {
+			parents.add(BlockHasher.hashNode(level.get(i), level.get(i + 1)));
+		}
+		if (level.size() % 2 == 1) {
+			parents.add(level.get(level.size() - 1));
+		}
+		return parents;
+	}
+}
@@ -0,0 +1,48 @@
+package com.cs271.pa1.service;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Outbound sends queued per peer, sent in order outside any lock
+class PeerOutbox {
+	private final Map<String, Channel> channels = new ConcurrentHashMap<>();
+
+	void add(String peer, Runnable send) {
+		channels.computeIfAbsent(peer, p -> new Channel()).pending.add(send);
+	}
+
+	void send() {
+		channels.values().forEach(Channel::drain);
+	}
+
+	void send(String peer) {
+		Channel channel = channels.get(peer);
+		if (channel != null) {
+			channel.drain();
+		}
+	}
+
+	private static class Channel {
+		private final Queue<Runnable> pending = new ConcurrentLinkedQueue<>();
+
+		// Threads that found work since the current sender started, so it looks again before leaving
+		private final AtomicInteger senders = new AtomicInteger();
+
+		void drain() {
+			if (pending.isEmpty() || senders.getAndIncrement() != 0) {
+				return;
+			}
+			int missed = 1;
+			do {
+				Runnable send;
+				while ((send = pending.poll()) != null) {
+					send.run();
+				}
+				missed = senders.addAndGet(-missed);
+			} while (missed != 0);
+		}
+	}
+}
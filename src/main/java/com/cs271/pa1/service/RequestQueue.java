@@ -0,0 +1,68 @@
+package com.cs271.pa1.service;
+
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+import com.cs271.pa1.dto.Request;
+
+// Lamport's request queue, ordered and indexed by process
+class RequestQueue {
+	private final ConcurrentSkipListSet<Request> ordered = new ConcurrentSkipListSet<>();
+
+	// A process's requests in arrival order, which is also timestamp order
+	private final Map<String, Deque<Request>> byProcess = new ConcurrentHashMap<>();
+
+	void add(Request request) {
+		byProcess.compute(request.getProcessId(), (p, requests) -> {
+			if (ordered.add(request)) {
+				requests = requests == null ? new ConcurrentLinkedDeque<>() : requests;
+				requests.addLast(request);
+			}
+			return requests;
+		});
+	}
+
+	// Removes every request of the process and returns whether there was any
+	boolean removeProcess(String processId) {
+		Deque<Request> requests = byProcess.remove(processId);
+		if (requests == null) {
+			return false;
+		}
+		requests.forEach(ordered::remove);
+		return true;
+	}
+
+	// The process's earliest request, or null
+	Request first(String processId) {
+		Deque<Request> requests = byProcess.get(processId);
+		return requests == null ? null : requests.peekFirst();
+	}
+
+	// Check the requests ordered before this one
+	boolean hasEarlierConflicting(Request request) {
+		for (Request earlier : ordered.headSet(request)) {
+			if (earlier.conflictsWith(request)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	List<Request> before(Request request) {
+		return new ArrayList<>(ordered.headSet(request));
+	}
+
+	int size() {
+		return ordered.size();
+	}
+
+	@Override
+	public String toString() {
+		return ordered.toString();
+	}
+}
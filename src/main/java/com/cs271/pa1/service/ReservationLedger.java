@@ -0,0 +1,56 @@
+package com.cs271.pa1.service;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+import com.cs271.pa1.dto.TransactionDto;
+
+// Pending outgoing amounts per sender, in minor units
+class ReservationLedger {
+	private final Map<String, Long> reserved = new ConcurrentHashMap<>();
+
+	// The admitted transfer objects themselves, which the commit path passes through unchanged
+	private final Map<TransactionDto, Long> byTransaction = Collections.synchronizedMap(new IdentityHashMap<>());
+
+	// Reserves the amount if the balance still covers it on top of what is already reserved
+	boolean tryReserve(TransactionDto transaction, long amount, LongSupplier balance) {
+		boolean[] admitted = new boolean[1];
+		reserved.compute(transaction.getSender(), (a, current) -> {
+			long pending = current == null ? 0 : current;
+			if (balance.getAsLong() - pending < amount) {
+				return current;
+			}
+			admitted[0] = true;
+			return pending + amount;
+		});
+		if (admitted[0]) {
+			byTransaction.put(transaction, amount);
+		}
+		return admitted[0];
+	}
+
+	// Apply the debit and drop its reservation together
+	void settle(TransactionDto transaction, Runnable debit) {
+		Long amount = byTransaction.remove(transaction);
+		if (amount == null) {
+			debit.run();
+			return;
+		}
+		reserved.compute(transaction.getSender(), (a, current) -> {
+			debit.run();
+			return current == null || current == (long) amount ? null : current - amount;
+		});
+	}
+
+	// Drops the reservation of a transfer that will not be applied; a no-op once settled
+	void release(TransactionDto transaction) {
+		Long amount = byTransaction.remove(transaction);
+		if (amount != null) {
+			reserved.computeIfPresent(transaction.getSender(),
+					(a, current) -> current == (long) amount ? null : current - amount);
+		}
+	}
+}
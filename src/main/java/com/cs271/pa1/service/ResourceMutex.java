@@ -0,0 +1,21 @@
+package com.cs271.pa1.service;
+
+import java.util.List;
+import java.util.function.BiConsumer;
+
+import com.cs271.pa1.dto.Request;
+
+// A DistributedMutex that can lock a set of accounts
+public interface ResourceMutex extends DistributedMutex {
+
+	void requestMutex(List<String> resources);
+
+	// This node's outstanding request
+	Request currentRequest();
+
+	// Other nodes' requests ordered before this node's that have not been released yet
+	List<Request> pendingBefore();
+
+	// Called with the releasing process id and release timestamp, including this node's own
+	void addReleaseListener(BiConsumer<String, Long> listener);
+}
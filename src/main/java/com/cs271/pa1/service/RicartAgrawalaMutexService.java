@@ -0,0 +1,187 @@
+package com.cs271.pa1.service;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import com.cs271.pa1.dto.Request;
+import com.cs271.pa1.proxy.RicartAgrawalaProxy;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+
+@Service
+@Slf4j
+@ConditionalOnProperty(name = "mutex.algorithm", havingValue = "ricart-agrawala")
+public class RicartAgrawalaMutexService implements DistributedMutex {
+	@Autowired
+	private RicartAgrawalaProxy ricartAgrawalaProxy;
+
+	@Autowired
+	private ClientPortService clientPortService;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@Value("${server.port}")
+	private String processId;
+
+	private long lamportClock = 0;
+
+	private Request myRequest;
+
+	private boolean requestFailed;
+
+	private final Set<String> replies = new HashSet<>();
+
+	private final Map<String, Long> deferredReplies = new LinkedHashMap<>();
+
+	private final Map<String, String> processUrls = new ConcurrentHashMap<>();
+
+	private volatile boolean inCriticalSection = false;
+
+	@PostConstruct
+	public void init() {
+		for (Integer port : clientPortService.getClientPorts()) {
+			processUrls.put(port + "", "http://localhost:" + port);
+		}
+		Gauge.builder("mutex.clock", this, service -> service.lamportClock).tag("algorithm", "ricart-agrawala")
+				.register(meterRegistry);
+	}
+
+	@Override
+	public String getProcessId() {
+		return processId;
+	}
+
+	private void updateClock(long receivedTimestamp) {
+		lamportClock = Math.max(lamportClock, receivedTimestamp) + 1;
+	}
+
+	@Override
+	public void requestMutex() {
+		Request request = new Request();
+		synchronized (this) {
+			if (inCriticalSection || myRequest != null) {
+				throw new IllegalStateException("Already in critical section");
+			}
+			request.setTimestamp(++lamportClock);
+			request.setProcessId(processId);
+			myRequest = request;
+			requestFailed = false;
+			replies.clear();
+		}
+
+		log.info("Broadcasting request {} to all", request);
+		for (String url : processUrls.values()) {
+			try {
+				ricartAgrawalaProxy.sendRequest(url, request);
+			} catch (Exception e) {
+				log.error("Failed to send request to {}: {}", url, e.getMessage());
+				// That peer never replies, so the acquire fails instead of waiting
+				synchronized (this) {
+					requestFailed = true;
+					notifyAll();
+				}
+			}
+		}
+	}
+
+	public synchronized void receiveRequest(Request request) {
+		log.info("Received request from process {}: {}", request.getProcessId(), request);
+		updateClock(request.getTimestamp());
+
+		boolean defer = inCriticalSection || (myRequest != null && myRequest.compareTo(request) < 0);
+		if (defer) {
+			deferredReplies.put(request.getProcessId(), request.getTimestamp());
+			log.info("Deferred reply to {}", request.getProcessId());
+		} else {
+			sendReply(request.getProcessId(), request.getTimestamp());
+		}
+	}
+
+	public synchronized void receiveReply(String fromProcessId, long timestamp, long requestTimestamp) {
+		updateClock(timestamp);
+		if (myRequest == null || myRequest.getTimestamp() != requestTimestamp) {
+			log.info("Ignoring stale reply from {}", fromProcessId);
+			return;
+		}
+		replies.add(fromProcessId);
+		log.info("Added reply from {}. Total replies: {}", fromProcessId, replies.size());
+		notifyAll();
+	}
+
+	private boolean canEnterCriticalSection() {
+		return !inCriticalSection && myRequest != null && replies.containsAll(processUrls.keySet());
+	}
+
+	@Override
+	public synchronized boolean acquire(long timeout, TimeUnit unit) throws InterruptedException {
+		long remaining = unit.toNanos(timeout);
+		long deadline = System.nanoTime() + remaining;
+		while (!canEnterCriticalSection()) {
+			if (remaining <= 0 || requestFailed) {
+				return false;
+			}
+			TimeUnit.NANOSECONDS.timedWait(this, remaining);
+			remaining = deadline - System.nanoTime();
+		}
+		inCriticalSection = true;
+		log.info("Entered critical section");
+		return true;
+	}
+
+	@Override
+	public synchronized void releaseMutex() {
+		if (!inCriticalSection) {
+			throw new IllegalStateException("Not in critical section");
+		}
+		inCriticalSection = false;
+		withdrawRequest();
+		log.info("Released critical section lamport clock: {}", lamportClock);
+	}
+
+	@Override
+	public synchronized void cancelRequest() {
+		if (inCriticalSection) {
+			throw new IllegalStateException("Already in critical section");
+		}
+		withdrawRequest();
+		log.info("Cancelled pending mutex request");
+	}
+
+	private void withdrawRequest() {
+		myRequest = null;
+		replies.clear();
+		deferredReplies.forEach(this::sendReply);
+		deferredReplies.clear();
+	}
+
+	private void sendReply(String toProcessId, long requestTimestamp) {
+		String url = processUrls.get(toProcessId);
+		if (url == null) {
+			log.warn("Unknown process {}", toProcessId);
+			return;
+		}
+		try {
+			ricartAgrawalaProxy.sendReply(url, processId, ++lamportClock, requestTimestamp);
+		} catch (Exception e) {
+			log.error("Failed to send reply to {}: {}", url, e.getMessage());
+		}
+	}
+
+	@Override
+	public boolean isInCriticalSection() {
+		return inCriticalSection;
+	}
+}
@@ -0,0 +1,194 @@
+package com.cs271.pa1.service;
+
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import com.cs271.pa1.dto.TokenDto;
+import com.cs271.pa1.proxy.SuzukiKasamiProxy;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+
+@Service
+@Slf4j
+@ConditionalOnProperty(name = "mutex.algorithm", havingValue = "suzuki-kasami")
+public class SuzukiKasamiMutexService implements DistributedMutex {
+	@Autowired
+	private SuzukiKasamiProxy suzukiKasamiProxy;
+
+	@Autowired
+	private ClientPortService clientPortService;
+
+	@Value("${server.port}")
+	private String processId;
+
+	// Highest request number seen from each process (RN)
+	private final Map<String, Long> requestNumbers = new ConcurrentHashMap<>();
+
+	private final Map<String, String> processUrls = new ConcurrentHashMap<>();
+
+	private TokenDto token;
+
+	private boolean requesting = false;
+
+	private boolean requestFailed;
+
+	private volatile boolean inCriticalSection = false;
+
+	@PostConstruct
+	public void init() {
+		TreeSet<String> allProcesses = new TreeSet<>();
+		allProcesses.add(processId);
+		for (Integer port : clientPortService.getClientPorts()) {
+			processUrls.put(port + "", "http://localhost:" + port);
+			allProcesses.add(port + "");
+		}
+		allProcesses.forEach(id -> requestNumbers.put(id, 0L));
+
+		// The lowest process id starts out holding the token
+		if (allProcesses.first().equals(processId)) {
+			token = new TokenDto();
+			allProcesses.forEach(id -> token.getLastRequestNumbers().put(id, 0L));
+			log.info("Process {} holds the initial token", processId);
+		}
+	}
+
+	@Override
+	public String getProcessId() {
+		return processId;
+	}
+
+	@Override
+	public void requestMutex() {
+		long sequenceNumber;
+		synchronized (this) {
+			if (inCriticalSection || requesting) {
+				throw new IllegalStateException("Already in critical section");
+			}
+			requesting = true;
+			requestFailed = false;
+			if (token != null) {
+				log.info("Token held locally, no request broadcast needed");
+				return;
+			}
+			sequenceNumber = requestNumbers.merge(processId, 1L, Long::sum);
+		}
+
+		log.info("Broadcasting request {} to all", sequenceNumber);
+		for (String url : processUrls.values()) {
+			try {
+				suzukiKasamiProxy.sendRequest(url, processId, sequenceNumber);
+			} catch (Exception e) {
+				log.error("Failed to send request to {}: {}", url, e.getMessage());
+				// The token may never come, so the acquire fails instead of waiting
+				synchronized (this) {
+					requestFailed = true;
+					notifyAll();
+				}
+			}
+		}
+	}
+
+	public synchronized void receiveRequest(String fromProcessId, long sequenceNumber) {
+		log.info("Received request {} from process {}", sequenceNumber, fromProcessId);
+		requestNumbers.merge(fromProcessId, sequenceNumber, Math::max);
+
+		if (token != null && !inCriticalSection && !requesting
+				&& isOutstanding(fromProcessId)) {
+			sendToken(fromProcessId);
+		}
+	}
+
+	public synchronized void receiveToken(TokenDto receivedToken) {
+		log.info("Received token {}", receivedToken);
+		token = receivedToken;
+		if (requesting) {
+			notifyAll();
+		} else {
+			passToken();
+		}
+	}
+
+	@Override
+	public synchronized boolean acquire(long timeout, TimeUnit unit) throws InterruptedException {
+		long remaining = unit.toNanos(timeout);
+		long deadline = System.nanoTime() + remaining;
+		while (token == null) {
+			if (remaining <= 0 || requestFailed) {
+				return false;
+			}
+			TimeUnit.NANOSECONDS.timedWait(this, remaining);
+			remaining = deadline - System.nanoTime();
+		}
+		inCriticalSection = true;
+		log.info("Entered critical section");
+		return true;
+	}
+
+	@Override
+	public synchronized void releaseMutex() {
+		if (!inCriticalSection) {
+			throw new IllegalStateException("Not in critical section");
+		}
+		inCriticalSection = false;
+		requesting = false;
+		passToken();
+		log.info("Released critical section");
+	}
+
+	@Override
+	public synchronized void cancelRequest() {
+		if (inCriticalSection) {
+			throw new IllegalStateException("Already in critical section");
+		}
+		requesting = false;
+		passToken();
+		log.info("Cancelled pending mutex request");
+	}
+
+	private void passToken() {
+		if (token == null) {
+			return;
+		}
+		token.getLastRequestNumbers().put(processId, requestNumbers.get(processId));
+
+		for (String id : new TreeSet<>(processUrls.keySet())) {
+			if (!token.getQueue().contains(id) && isOutstanding(id)) {
+				token.getQueue().add(id);
+			}
+		}
+		if (!token.getQueue().isEmpty()) {
+			sendToken(token.getQueue().remove(0));
+		}
+	}
+
+	private boolean isOutstanding(String id) {
+		return requestNumbers.getOrDefault(id, 0L) == token.getLastRequestNumbers().getOrDefault(id, 0L) + 1;
+	}
+
+	private void sendToken(String toProcessId) {
+		TokenDto outgoing = token;
+		token = null;
+		String url = processUrls.get(toProcessId);
+		log.info("Passing token to {}", toProcessId);
+		try {
+			suzukiKasamiProxy.sendToken(url, processId, outgoing);
+		} catch (Exception e) {
+			// Not queued, so it stays here rather than vanish
+			log.error("Failed to send token to {}: {}", url, e.getMessage());
+			token = outgoing;
+		}
+	}
+
+	@Override
+	public boolean isInCriticalSection() {
+		return inCriticalSection;
+	}
+}
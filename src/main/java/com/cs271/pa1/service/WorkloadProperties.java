@@ -0,0 +1,42 @@
+package com.cs271.pa1.service;
+
+import java.math.BigDecimal;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Data;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "load")
+public class WorkloadProperties {
+	// Run the workload at startup instead of showing the menu
+	private boolean autostart = false;
+
+	// closed: fixed clients, open: fixed rate
+	private String mode = "closed";
+	private int clients = 1;
+	private double rate = 10;
+
+	private long warmupSeconds = 5;
+	private long durationSeconds = 30;
+
+	// Epoch millis the coordinated run starts at; 0 starts immediately
+	private long startAt = 0;
+
+	// uniform | zipf | hot
+	private String accountDistribution = "uniform";
+	private double zipfExponent = 1.0;
+	// hot: hotFraction of senders and receivers drawn from the first hotAccounts accounts
+	private int hotAccounts = 1;
+	private double hotFraction = 0.9;
+
+	// fixed (minAmount) | uniform between minAmount and maxAmount
+	private String amountDistribution = "fixed";
+	private BigDecimal minAmount = new BigDecimal("0.01");
+	private BigDecimal maxAmount = new BigDecimal("0.01");
+
+	// 0 picks a random seed per run
+	private long seed = 0;
+}
@@ -0,0 +1,73 @@
+package com.cs271.pa1.store;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+import com.cs271.pa1.dto.BlockDto;
+
+// Decoded cold blocks by height, LRU
+final class BlockCache {
+	private final int capacity;
+
+	private final LinkedHashMap<Integer, BlockDto> blocks;
+
+	private long hits;
+
+	private long misses;
+
+	private long evictions;
+
+	BlockCache(int capacity) {
+		this.capacity = capacity;
+		blocks = new LinkedHashMap<>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, BlockDto> eldest) {
+				if (size() <= BlockCache.this.capacity) {
+					return false;
+				}
+				evictions++;
+				return true;
+			}
+		};
+	}
+
+	BlockDto get(int height, IntFunction<BlockDto> loader) {
+		synchronized (this) {
+			BlockDto block = blocks.get(height);
+			if (block != null) {
+				hits++;
+				return block;
+			}
+			misses++;
+		}
+		BlockDto block = loader.apply(height);
+		if (capacity <= 0) {
+			return block;
+		}
+		synchronized (this) {
+			BlockDto cached = blocks.putIfAbsent(height, block);
+			return cached == null ? block : cached;
+		}
+	}
+
+	synchronized void clear() {
+		blocks.clear();
+	}
+
+	synchronized int size() {
+		return blocks.size();
+	}
+
+	synchronized long hits() {
+		return hits;
+	}
+
+	synchronized long misses() {
+		return misses;
+	}
+
+	synchronized long evictions() {
+		return evictions;
+	}
+}
@@ -0,0 +1,236 @@
+package com.cs271.pa1.store;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import com.cs271.pa1.dto.BlockDto;
+import com.cs271.pa1.dto.BlockHash;
+import com.cs271.pa1.dto.Request;
+import com.cs271.pa1.dto.TransactionDto;
+
+// Layout: format, body tag, block flags, block fields, body
+public final class BlockCodec {
+	private static final byte FORMAT = 1;
+
+	private static final byte NO_TRANSACTIONS = 0;
+	private static final byte OPERATION = 1;
+	private static final byte TRANSACTIONS = 2;
+
+	private static final int HAS_TIMESTAMP = 1;
+	private static final int HAS_HASH = 1 << 1;
+	private static final int HAS_LOCK = 1 << 2;
+
+	private static final int HAS_TX_TIMESTAMP = 1;
+	private static final int HAS_UUID = 1 << 1;
+	private static final int HAS_TX_ID = 1 << 2;
+
+	private BlockCodec() {
+	}
+
+	public static int maxEncodedSize(BlockDto block) {
+		int size = 3 + 8 + BlockHash.BYTES;
+		TransactionDto op = block.getOperation();
+		if (op != null) {
+			size += 1 + 8 + 16 + maxEncodedSize(op);
+		}
+		if (block.getTransactions() != null) {
+			size += BlockHash.BYTES + 4;
+			for (TransactionDto transaction : block.getTransactions()) {
+				size += 1 + 8 + 16 + maxEncodedSize(transaction);
+			}
+		}
+		if (block.getLock() != null) {
+			size += 8 + stringSize(block.getLock().getProcessId()) + 4;
+			for (Request dependency : dependencies(block)) {
+				size += 8 + stringSize(dependency.getProcessId());
+			}
+		}
+		return size;
+	}
+
+	private static int maxEncodedSize(TransactionDto op) {
+		return stringSize(op.getSender()) + stringSize(op.getReceiver()) + stringSize(op.getTransactionId()) + 4 + 2
+				+ op.getAmount().unscaledValue().bitLength() / 8 + 1;
+	}
+
+	public static void encode(BlockDto block, ByteBuffer buffer) {
+		TransactionDto op = block.getOperation();
+		int flags = 0;
+		if (block.getCurrentBlockHash() != null) {
+			flags |= HAS_HASH;
+		}
+		if (block.getTimestamp() != null) {
+			flags |= HAS_TIMESTAMP;
+		}
+		if (block.getLock() != null) {
+			flags |= HAS_LOCK;
+		}
+
+		buffer.put(FORMAT);
+		buffer.put(op != null ? OPERATION : block.getTransactions() != null ? TRANSACTIONS : NO_TRANSACTIONS);
+		buffer.put((byte) flags);
+		if (block.getTimestamp() != null) {
+			buffer.putLong(block.getTimestamp());
+		}
+		if (block.getCurrentBlockHash() != null) {
+			block.getCurrentBlockHash().write(buffer);
+		}
+		if (block.getLock() != null) {
+			putRequest(buffer, block.getLock());
+			List<Request> dependencies = dependencies(block);
+			buffer.putInt(dependencies.size());
+			for (Request dependency : dependencies) {
+				putRequest(buffer, dependency);
+			}
+		}
+		if (op != null) {
+			putTransaction(buffer, op);
+		} else if (block.getTransactions() != null) {
+			block.getMerkleRoot().write(buffer);
+			buffer.putInt(block.getTransactions().size());
+			for (TransactionDto transaction : block.getTransactions()) {
+				putTransaction(buffer, transaction);
+			}
+		}
+	}
+
+	private static void putTransaction(ByteBuffer buffer, TransactionDto op) {
+		UUID uuid = parseUuid(op.getTransactionId());
+		int flags = 0;
+		if (op.getTimestamp() != null) {
+			flags |= HAS_TX_TIMESTAMP;
+		}
+		if (uuid != null) {
+			flags |= HAS_UUID;
+		} else if (op.getTransactionId() != null) {
+			flags |= HAS_TX_ID;
+		}
+		buffer.put((byte) flags);
+		putString(buffer, op.getSender());
+		putString(buffer, op.getReceiver());
+		putDecimal(buffer, op.getAmount());
+		if (op.getTimestamp() != null) {
+			buffer.putLong(op.getTimestamp());
+		}
+		if (uuid != null) {
+			buffer.putLong(uuid.getMostSignificantBits());
+			buffer.putLong(uuid.getLeastSignificantBits());
+		} else if (op.getTransactionId() != null) {
+			putString(buffer, op.getTransactionId());
+		}
+	}
+
+	public static BlockDto decode(ByteBuffer buffer) {
+		byte format = buffer.get();
+		if (format != FORMAT) {
+			throw new IllegalStateException("Unsupported block format " + format);
+		}
+		byte body = buffer.get();
+		int flags = buffer.get() & 0xFF;
+		BlockDto block = BlockDto.builder().build();
+		if ((flags & HAS_TIMESTAMP) != 0) {
+			block.setTimestamp(buffer.getLong());
+		}
+		if ((flags & HAS_HASH) != 0) {
+			block.setCurrentBlockHash(BlockHash.read(buffer));
+		}
+		if ((flags & HAS_LOCK) != 0) {
+			block.setLock(getRequest(buffer));
+			int count = buffer.getInt();
+			List<Request> dependencies = new ArrayList<>(count);
+			for (int i = 0; i < count; i++) {
+				dependencies.add(getRequest(buffer));
+			}
+			block.setDependencies(dependencies);
+		}
+		if (body == OPERATION) {
+			block.setOperation(getTransaction(buffer));
+		} else if (body == TRANSACTIONS) {
+			block.setMerkleRoot(BlockHash.read(buffer));
+			int count = buffer.getInt();
+			List<TransactionDto> transactions = new ArrayList<>(count);
+			for (int i = 0; i < count; i++) {
+				transactions.add(getTransaction(buffer));
+			}
+			block.setTransactions(transactions);
+		} else if (body != NO_TRANSACTIONS) {
+			throw new IllegalStateException("Unknown block body " + body);
+		}
+		return block;
+	}
+
+	private static TransactionDto getTransaction(ByteBuffer buffer) {
+		int flags = buffer.get() & 0xFF;
+		TransactionDto op = TransactionDto.builder().sender(getString(buffer)).receiver(getString(buffer))
+				.amount(getDecimal(buffer)).build();
+		if ((flags & HAS_TX_TIMESTAMP) != 0) {
+			op.setTimestamp(buffer.getLong());
+		}
+		if ((flags & HAS_UUID) != 0) {
+			op.setTransactionId(new UUID(buffer.getLong(), buffer.getLong()).toString());
+		} else if ((flags & HAS_TX_ID) != 0) {
+			op.setTransactionId(getString(buffer));
+		}
+		return op;
+	}
+
+	private static List<Request> dependencies(BlockDto block) {
+		return block.getDependencies() == null ? List.of() : block.getDependencies();
+	}
+
+	private static void putRequest(ByteBuffer buffer, Request request) {
+		buffer.putLong(request.getTimestamp());
+		putString(buffer, request.getProcessId());
+	}
+
+	private static Request getRequest(ByteBuffer buffer) {
+		return Request.of(buffer.getLong(), getString(buffer));
+	}
+
+	private static UUID parseUuid(String value) {
+		if (value == null || value.length() != 36) {
+			return null;
+		}
+		try {
+			UUID uuid = UUID.fromString(value);
+			return uuid.toString().equals(value) ? uuid : null;
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	private static int stringSize(String value) {
+		return value == null ? 2 : 2 + value.length() * 3;
+	}
+
+	private static void putString(ByteBuffer buffer, String value) {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		buffer.putShort((short) bytes.length);
+		buffer.put(bytes);
+	}
+
+	private static String getString(ByteBuffer buffer) {
+		byte[] bytes = new byte[Short.toUnsignedInt(buffer.getShort())];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static void putDecimal(ByteBuffer buffer, BigDecimal value) {
+		byte[] unscaled = value.unscaledValue().toByteArray();
+		buffer.putInt(value.scale());
+		buffer.putShort((short) unscaled.length);
+		buffer.put(unscaled);
+	}
+
+	private static BigDecimal getDecimal(ByteBuffer buffer) {
+		int scale = buffer.getInt();
+		byte[] unscaled = new byte[Short.toUnsignedInt(buffer.getShort())];
+		buffer.get(unscaled);
+		return new BigDecimal(new BigInteger(unscaled), scale);
+	}
+}
@@ -0,0 +1,372 @@
+package com.cs271.pa1.store;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.cs271.pa1.dto.BlockDto;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+@Component
+public class BlockLog {
+	private static final String SEGMENT_PREFIX = "segment-";
+	private static final String SEGMENT_SUFFIX = ".log";
+
+	// length + crc32c
+	private static final int RECORD_OVERHEAD = 8;
+
+	@Value("${blockchain.store.enabled:false}")
+	private boolean enabled;
+
+	@Value("${blockchain.store.directory:data/${server.port}}")
+	private String directory;
+
+	@Value("${blockchain.store.segment-size-bytes:67108864}")
+	private long segmentSizeBytes;
+
+	@Value("${blockchain.store.sync:true}")
+	private boolean sync;
+
+	@Value("${blockchain.store.fsync-interval-ms:2}")
+	private long fsyncIntervalMs;
+
+	private Path storeDirectory;
+
+	private FileChannel activeChannel;
+
+	private Path activeSegment;
+
+	private long blockCount;
+
+	private ByteBuffer writeBuffer = ByteBuffer.allocateDirect(4096);
+
+	private final CRC32C crc = new CRC32C();
+
+	private long writtenSequence;
+
+	private long syncedSequence;
+
+	private Thread flusherThread;
+
+	// Set once a failure leaves the log's durable state unknown; no append is accepted after it
+	private IOException failure;
+
+	private volatile boolean running = true;
+
+	public BlockLog() {
+	}
+
+	public BlockLog(Path directory, long segmentSizeBytes, boolean sync, long fsyncIntervalMs) {
+		this.enabled = true;
+		this.directory = directory.toString();
+		this.segmentSizeBytes = segmentSizeBytes;
+		this.sync = sync;
+		this.fsyncIntervalMs = fsyncIntervalMs;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	@PostConstruct
+	public void open() {
+		if (!enabled) {
+			return;
+		}
+		try {
+			storeDirectory = Paths.get(directory);
+			Files.createDirectories(storeDirectory);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Cannot open block store at " + directory, e);
+		}
+		flusherThread = new Thread(this::runFlusher, "block-log-flusher");
+		flusherThread.setDaemon(true);
+		flusherThread.start();
+		log.info("Block store opened at {}", storeDirectory.toAbsolutePath());
+	}
+
+	@PreDestroy
+	public void close() {
+		synchronized (this) {
+			running = false;
+			notifyAll();
+		}
+		// Interrupting would close the channel under an in-flight force()
+		if (flusherThread != null) {
+			try {
+				flusherThread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		synchronized (this) {
+			try {
+				if (activeChannel != null) {
+					activeChannel.force(false);
+					activeChannel.close();
+					activeChannel = null;
+				}
+			} catch (IOException e) {
+				log.error("Failed to close block store", e);
+			}
+		}
+	}
+
+	// Replay records, truncating a torn tail
+	public long replay(Consumer<BlockDto> consumer) {
+		return replay(0, consumer);
+	}
+
+	// As replay, from fromBlock on
+	public synchronized long replay(long fromBlock, Consumer<BlockDto> consumer) {
+		List<Path> segments = listSegments();
+		int first = 0;
+		while (first + 1 < segments.size() && firstBlock(segments.get(first + 1)) <= fromBlock) {
+			first++;
+		}
+		blockCount = first == 0 ? 0 : firstBlock(segments.get(first));
+		try {
+			if (activeChannel != null) {
+				activeChannel.close();
+				activeChannel = null;
+			}
+			for (int i = first; i < segments.size(); i++) {
+				Path segment = segments.get(i);
+				long validBytes = replaySegment(segment, fromBlock, consumer);
+				boolean last = i == segments.size() - 1;
+				if (validBytes < Files.size(segment)) {
+					if (!last) {
+						throw new IllegalStateException("Corrupt record in sealed segment " + segment);
+					}
+					log.warn("Truncating torn tail of {} at {} bytes", segment, validBytes);
+					try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+						channel.truncate(validBytes);
+					}
+				}
+			}
+			if (!segments.isEmpty()) {
+				activeSegment = segments.get(segments.size() - 1);
+				activeChannel = FileChannel.open(activeSegment, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to replay block store", e);
+		}
+		log.info("Replayed {} blocks from {} of {} segments", Math.max(0, blockCount - fromBlock),
+				segments.size() - first, segments.size());
+		return blockCount;
+	}
+
+	private static long firstBlock(Path segment) {
+		String name = segment.getFileName().toString();
+		return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+	}
+
+	private long replaySegment(Path segment, long fromBlock, Consumer<BlockDto> consumer) throws IOException {
+		try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size == 0) {
+				return 0;
+			}
+			MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			CRC32C checksum = new CRC32C();
+			while (mapped.remaining() >= RECORD_OVERHEAD) {
+				int start = mapped.position();
+				int length = mapped.getInt();
+				if (length <= 0 || mapped.remaining() < length + 4) {
+					return start;
+				}
+				if (blockCount < fromBlock) {
+					mapped.position(mapped.position() + length + 4);
+					blockCount++;
+					continue;
+				}
+				ByteBuffer payload = mapped.slice(mapped.position(), length);
+				checksum.reset();
+				checksum.update(payload.duplicate());
+				mapped.position(mapped.position() + length);
+				if ((int) checksum.getValue() != mapped.getInt()) {
+					return start;
+				}
+				consumer.accept(BlockCodec.decode(payload));
+				blockCount++;
+			}
+			return mapped.position();
+		}
+	}
+
+	public void append(BlockDto block) {
+		long sequence;
+		synchronized (this) {
+			sequence = write(block);
+		}
+		if (sync) {
+			awaitSync(sequence);
+		}
+	}
+
+	private long write(BlockDto block) {
+		if (failure != null) {
+			throw new UncheckedIOException("Block store failed", failure);
+		}
+		int maxSize = BlockCodec.maxEncodedSize(block) + RECORD_OVERHEAD;
+		if (writeBuffer.capacity() < maxSize) {
+			writeBuffer = ByteBuffer.allocateDirect(Integer.highestOneBit(maxSize) << 1);
+		}
+		writeBuffer.clear();
+		writeBuffer.position(4);
+		BlockCodec.encode(block, writeBuffer);
+		int length = writeBuffer.position() - 4;
+		writeBuffer.putInt(0, length);
+		crc.reset();
+		crc.update(writeBuffer.slice(4, length));
+		writeBuffer.putInt((int) crc.getValue());
+		writeBuffer.flip();
+
+		long start = -1;
+		try {
+			rollIfNeeded(writeBuffer.remaining());
+			start = activeChannel.size();
+			while (writeBuffer.hasRemaining()) {
+				activeChannel.write(writeBuffer);
+			}
+		} catch (IOException e) {
+			discardPartialRecord(start, e);
+			throw new UncheckedIOException("Failed to append block", e);
+		}
+		blockCount++;
+		writtenSequence++;
+		notifyAll();
+		return writtenSequence;
+	}
+
+	// A partial record would end the log at replay, dropping every block appended after it
+	private void discardPartialRecord(long start, IOException cause) {
+		// Hold back the interrupt until the segment is reopened
+		boolean interrupted = Thread.interrupted();
+		try {
+			if (activeChannel != null && !activeChannel.isOpen()) {
+				activeChannel = FileChannel.open(activeSegment, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+				activeChannel.force(false);
+			}
+			if (start >= 0) {
+				activeChannel.truncate(start);
+			}
+		} catch (IOException e) {
+			cause.addSuppressed(e);
+			failure = cause;
+			notifyAll();
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private void rollIfNeeded(int recordSize) throws IOException {
+		if (activeChannel != null && activeChannel.size() + recordSize <= segmentSizeBytes) {
+			return;
+		}
+		if (activeChannel != null && activeChannel.size() == 0) {
+			return;
+		}
+		if (activeChannel != null) {
+			activeChannel.force(false);
+			activeChannel.close();
+			activeChannel = null;
+		}
+		activeSegment = storeDirectory
+				.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, blockCount, SEGMENT_SUFFIX));
+		activeChannel = FileChannel.open(activeSegment, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.APPEND);
+		log.info("Rolled to new segment {}", activeSegment.getFileName());
+	}
+
+	private synchronized void awaitSync(long sequence) {
+		while (syncedSequence < sequence && running && failure == null) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new UncheckedIOException(new InterruptedIOException("Interrupted before the block was synced"));
+			}
+		}
+		if (syncedSequence < sequence && failure != null) {
+			throw new UncheckedIOException("Block store fsync failed", failure);
+		}
+	}
+
+	private void runFlusher() {
+		while (running) {
+			FileChannel channel;
+			long target;
+			synchronized (this) {
+				try {
+					while (writtenSequence == syncedSequence && running) {
+						wait();
+					}
+					// Let concurrent writers join this fsync
+					long deadline = System.currentTimeMillis() + fsyncIntervalMs;
+					for (long remaining = fsyncIntervalMs; remaining > 0 && running; remaining = deadline
+							- System.currentTimeMillis()) {
+						wait(remaining);
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+				channel = activeChannel;
+				target = writtenSequence;
+			}
+			try {
+				if (channel != null) {
+					channel.force(false);
+				}
+			} catch (ClosedChannelException e) {
+				// Segment was rolled or reopened, either of which forces it
+			} catch (IOException e) {
+				// Which writes reached the disk is unknown, so the waiters fail and the log stops
+				log.error("Block store fsync failed", e);
+				synchronized (this) {
+					failure = e;
+					notifyAll();
+				}
+				return;
+			}
+			synchronized (this) {
+				syncedSequence = Math.max(syncedSequence, target);
+				notifyAll();
+			}
+		}
+	}
+
+	public synchronized long size() {
+		return blockCount;
+	}
+
+	private List<Path> listSegments() {
+		try (Stream<Path> files = Files.list(storeDirectory)) {
+			return files.filter(p -> p.getFileName().toString().startsWith(SEGMENT_PREFIX)).sorted().toList();
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to list block store segments", e);
+		}
+	}
+}
@@ -0,0 +1,77 @@
+package com.cs271.pa1.store;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.cs271.pa1.dto.BlockDto;
+
+// Range stream: gzip over a start height and length-prefixed blocks
+public final class BlockStreamCodec {
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private BlockStreamCodec() {
+	}
+
+	public static class Writer implements Closeable {
+		private final DataOutputStream out;
+		private ByteBuffer buffer = ByteBuffer.allocate(4096);
+
+		public Writer(OutputStream out, int fromHeight) throws IOException {
+			this.out = new DataOutputStream(
+					new BufferedOutputStream(new GZIPOutputStream(out, BUFFER_SIZE), BUFFER_SIZE));
+			this.out.writeInt(fromHeight);
+		}
+
+		public void write(BlockDto block) throws IOException {
+			int size = BlockCodec.maxEncodedSize(block);
+			if (buffer.capacity() < size) {
+				buffer = ByteBuffer.allocate(Integer.highestOneBit(size) << 1);
+			}
+			buffer.clear();
+			BlockCodec.encode(block, buffer);
+			out.writeInt(buffer.position());
+			out.write(buffer.array(), 0, buffer.position());
+		}
+
+		// Finishes the gzip trailer and closes the underlying stream
+		@Override
+		public void close() throws IOException {
+			out.close();
+		}
+	}
+
+	// Returns the number of blocks read
+	public static int read(InputStream in, Consumer<BlockDto> sink) throws IOException {
+		DataInputStream data = new DataInputStream(
+				new BufferedInputStream(new GZIPInputStream(in, BUFFER_SIZE), BUFFER_SIZE));
+		int height = data.readInt();
+		byte[] bytes = new byte[4096];
+		int count = 0;
+		while (true) {
+			int length;
+			try {
+				length = data.readInt();
+			} catch (EOFException e) {
+				return count;
+			}
+			if (bytes.length < length) {
+				bytes = new byte[Integer.highestOneBit(length) << 1];
+			}
+			data.readFully(bytes, 0, length);
+			BlockDto block = BlockCodec.decode(ByteBuffer.wrap(bytes, 0, length));
+			block.setHeight(height + count++);
+			sink.accept(block);
+		}
+	}
+}
@@ -0,0 +1,378 @@
+package com.cs271.pa1.store;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
+
+import com.cs271.pa1.dto.BlockDto;
+import com.cs271.pa1.dto.BlockHash;
+import com.cs271.pa1.dto.ColdTierDto;
+import com.cs271.pa1.dto.TransactionDto;
+
+// Blocks in chunks, old ones spilled to the cold tier
+public class ChainStore {
+	static final int CHUNK_SHIFT = 10;
+	static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+	static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+	// Spilled chunks are null
+	private final List<BlockDto[]> chunks = new ArrayList<>();
+
+	private final ColdBlockStore cold;
+
+	private int firstHotChunk;
+
+	// A block's hash is only known once its successor links to it
+	private HeightIndex heightByHash = new HeightIndex();
+
+	private HeightIndex heightByTransactionId = new HeightIndex();
+
+	private Map<String, HeightList> heightsByAccount = new HashMap<>();
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private int size;
+
+	public ChainStore() {
+		this(null);
+	}
+
+	public ChainStore(ColdBlockStore cold) {
+		this.cold = cold;
+	}
+
+	// In bytes, for the hash, transaction id and account indexes held on heap
+	long residentIndexBytes() {
+		lock.readLock().lock();
+		try {
+			long bytes = heightByHash.bytes() + heightByTransactionId.bytes();
+			for (HeightList heights : heightsByAccount.values()) {
+				bytes += heights.values.length * (long) Integer.BYTES;
+			}
+			return bytes;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public int append(BlockDto block) {
+		lock.writeLock().lock();
+		try {
+			int height = size;
+			if ((height & CHUNK_MASK) == 0) {
+				chunks.add(new BlockDto[CHUNK_SIZE]);
+			}
+			chunks.get(height >>> CHUNK_SHIFT)[height & CHUNK_MASK] = block;
+			size++;
+
+			// A restored cold tier already holds the key of the block before the first hot one
+			if (block.getCurrentBlockHash() != null && height > firstHotChunk << CHUNK_SHIFT) {
+				heightByHash.put(block.getCurrentBlockHash().h0(), height - 1);
+			}
+			for (TransactionDto operation : block.operations()) {
+				if (operation.getTransactionId() != null) {
+					heightByTransactionId.put(transactionKey(operation.getTransactionId()), height);
+				}
+				indexAccount(operation.getSender(), height);
+				if (!operation.getReceiver().equals(operation.getSender())) {
+					indexAccount(operation.getReceiver(), height);
+				}
+			}
+			if (cold != null && size - (firstHotChunk << CHUNK_SHIFT) >= cold.getHotBlocks() + CHUNK_SIZE) {
+				spillOldestChunk();
+			}
+			return height;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	// The next chunk is hot, so the last block's hash key is known from its successor
+	private void spillOldestChunk() {
+		BlockDto[] chunk = chunks.get(firstHotChunk);
+		int base = firstHotChunk << CHUNK_SHIFT;
+		cold.spill(chunk);
+		for (int i = 0; i < CHUNK_SIZE; i++) {
+			int height = base + i;
+			BlockHash hash = blockAt(height + 1).getCurrentBlockHash();
+			if (hash != null) {
+				heightByHash.remove(hash.h0(), height);
+				cold.hashIndex().put(hash.h0(), height);
+			}
+			for (TransactionDto operation : chunk[i].operations()) {
+				if (operation.getTransactionId() != null) {
+					long key = transactionKey(operation.getTransactionId());
+					heightByTransactionId.remove(key, height);
+					cold.transactionIndex().put(key, height);
+				}
+			}
+		}
+		for (HeightList heights : heightsByAccount.values()) {
+			heights.spillBelow(base + CHUNK_SIZE);
+		}
+		chunks.set(firstHotChunk++, null);
+	}
+
+	// Cold tier state for a checkpoint
+	public ColdTierDto coldTier() {
+		lock.readLock().lock();
+		try {
+			if (firstHotChunk == 0) {
+				return null;
+			}
+			Map<String, Integer> accountHeights = new HashMap<>();
+			heightsByAccount.forEach((account, heights) -> {
+				if (heights.spilled > 0) {
+					accountHeights.put(account, heights.spilled);
+				}
+			});
+			return ColdTierDto.builder().chunks(firstHotChunk)
+					.boundaryHash(blockAt(firstHotChunk << CHUNK_SHIFT).getCurrentBlockHash())
+					.hashKeys(cold.hashIndex().size()).transactionKeys(cold.transactionIndex().size())
+					.accountHeights(accountHeights).build();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	// Start from a recorded cold tier
+	public void restoreCold(ColdTierDto tier) {
+		lock.writeLock().lock();
+		try {
+			if (cold == null || size != 0) {
+				throw new IllegalStateException("Cold tier can only be restored into an empty tiered chain");
+			}
+			cold.restore(tier);
+			for (int chunk = 0; chunk < tier.getChunks(); chunk++) {
+				chunks.add(null);
+			}
+			firstHotChunk = tier.getChunks();
+			size = firstHotChunk << CHUNK_SHIFT;
+			tier.getAccountHeights().forEach((account, spilled) -> heightsByAccount.computeIfAbsent(account,
+					a -> new HeightList()).spilled = spilled);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public void clear() {
+		lock.writeLock().lock();
+		try {
+			chunks.clear();
+			firstHotChunk = 0;
+			size = 0;
+			heightByHash = new HeightIndex();
+			heightByTransactionId = new HeightIndex();
+			heightsByAccount = new HashMap<>();
+			if (cold != null) {
+				cold.clear();
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private void indexAccount(String account, int height) {
+		heightsByAccount.computeIfAbsent(account, a -> new HeightList()).add(height);
+	}
+
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return size;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	public BlockDto head() {
+		lock.readLock().lock();
+		try {
+			return size == 0 ? null : blockAt(size - 1);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public Optional<BlockDto> getByHeight(int height) {
+		lock.readLock().lock();
+		try {
+			return height < 0 || height >= size ? Optional.empty() : Optional.of(blockAt(height));
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public Optional<BlockDto> getByHash(BlockHash hash) {
+		lock.readLock().lock();
+		try {
+			IntPredicate links = h -> hash.equals(blockAt(h + 1).getCurrentBlockHash());
+			int height = heightByHash.find(hash.h0(), links);
+			if (height < 0 && firstHotChunk > 0) {
+				height = cold.hashIndex().find(hash.h0(), links);
+			}
+			return height < 0 ? Optional.empty() : Optional.of(blockAt(height));
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public Optional<BlockDto> getByTransactionId(String transactionId) {
+		lock.readLock().lock();
+		try {
+			int height = findTransaction(transactionId);
+			return height < 0 ? Optional.empty() : Optional.of(blockAt(height));
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public Optional<Integer> getHeightByTransactionId(String transactionId) {
+		lock.readLock().lock();
+		try {
+			int height = findTransaction(transactionId);
+			return height < 0 ? Optional.empty() : Optional.of(height);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public List<BlockDto> range(int fromHeight, int limit) {
+		lock.readLock().lock();
+		try {
+			int from = Math.max(0, fromHeight);
+			int to = (int) Math.min((long) from + Math.max(0, limit), size);
+			List<BlockDto> blocks = new ArrayList<>(Math.max(0, to - from));
+			int height = from;
+			int coldTo = Math.min(to, firstHotChunk << CHUNK_SHIFT);
+			if (height < coldTo) {
+				cold.scan(height, coldTo, blocks::add);
+				height = coldTo;
+			}
+			for (; height < to; height++) {
+				blocks.add(blockAt(height));
+			}
+			return blocks;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	// Most recent first; older pages read each spilled chunk's account table, newest first
+	public List<BlockDto> accountHistory(String account, int offset, int limit) {
+		lock.readLock().lock();
+		try {
+			HeightList heights = heightsByAccount.get(account);
+			if (heights == null) {
+				return Collections.emptyList();
+			}
+			List<BlockDto> blocks = new ArrayList<>();
+			int skip = Math.max(0, offset);
+			for (int i = heights.size - 1 - skip; i >= heights.start && blocks.size() < limit; i--) {
+				blocks.add(blockAt(heights.values[i]));
+			}
+			skip = Math.max(0, skip - (heights.size - heights.start));
+			for (int chunk = firstHotChunk - 1; chunk >= 0 && blocks.size() < limit; chunk--) {
+				int[] spilled = cold.accountHeights(chunk, account);
+				for (int i = spilled.length - 1 - skip; i >= 0 && blocks.size() < limit; i--) {
+					blocks.add(blockAt(spilled[i]));
+				}
+				skip = Math.max(0, skip - spilled.length);
+			}
+			return blocks;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public int accountHistorySize(String account) {
+		lock.readLock().lock();
+		try {
+			HeightList heights = heightsByAccount.get(account);
+			return heights == null ? 0 : heights.spilled + heights.size - heights.start;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public void forEachNewestFirst(int limit, Consumer<BlockDto> consumer) {
+		lock.readLock().lock();
+		try {
+			for (int height = size - 1; height >= Math.max(0, size - limit); height--) {
+				consumer.accept(blockAt(height));
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private BlockDto blockAt(int height) {
+		BlockDto[] chunk = chunks.get(height >>> CHUNK_SHIFT);
+		return chunk == null ? cold.read(height) : chunk[height & CHUNK_MASK];
+	}
+
+	private int findTransaction(String transactionId) {
+		IntPredicate contains = height -> blockAt(height).operations().stream()
+				.anyMatch(operation -> transactionId.equals(operation.getTransactionId()));
+		long key = transactionKey(transactionId);
+		int height = heightByTransactionId.find(key, contains);
+		if (height < 0 && firstHotChunk > 0) {
+			height = cold.transactionIndex().find(key, contains);
+		}
+		return height;
+	}
+
+	// FNV-1a over the id's characters
+	private static long transactionKey(String transactionId) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < transactionId.length(); i++) {
+			hash = (hash ^ transactionId.charAt(i)) * 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	// Hot heights in values[start, size), with a count of those spilled before them
+	private static final class HeightList {
+		private int[] values = new int[4];
+		private int start;
+		private int size;
+		private int spilled;
+
+		// A batch can move an account several times in one block, listed once
+		private void add(int height) {
+			if (size > 0 && values[size - 1] == height) {
+				return;
+			}
+			if (size == values.length) {
+				// Compacts once a quarter is spilled, so a bounded hot count keeps the array bounded
+				if (start >= size >> 2) {
+					System.arraycopy(values, start, values, 0, size - start);
+					size -= start;
+					start = 0;
+				} else {
+					values = Arrays.copyOf(values, size << 1);
+				}
+			}
+			values[size++] = height;
+		}
+
+		private void spillBelow(int height) {
+			while (start < size && values[start] < height) {
+				start++;
+				spilled++;
+			}
+		}
+	}
+}
@@ -0,0 +1,150 @@
+package com.cs271.pa1.store;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.cs271.pa1.dto.CheckpointDto;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+@Component
+public class CheckpointStore {
+	private static final String CHECKPOINT_PREFIX = "checkpoint-";
+	private static final String CHECKPOINT_SUFFIX = ".json";
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Autowired
+	private ColdBlockStore coldBlockStore;
+
+	@Value("${blockchain.checkpoint.enabled:false}")
+	private boolean enabled;
+
+	@Value("${blockchain.checkpoint.interval-blocks:1000}")
+	private int intervalBlocks;
+
+	@Value("${blockchain.checkpoint.retain:2}")
+	private int retain;
+
+	@Value("${blockchain.store.directory:data/${server.port}}")
+	private String directory;
+
+	private Path checkpointDirectory;
+
+	private final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "checkpoint-writer");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private volatile CheckpointDto latest;
+
+	@PostConstruct
+	public void open() {
+		if (!enabled) {
+			return;
+		}
+		checkpointDirectory = Paths.get(directory, "checkpoints");
+		try {
+			Files.createDirectories(checkpointDirectory);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Cannot open checkpoint directory " + checkpointDirectory, e);
+		}
+	}
+
+	@PreDestroy
+	public void close() throws InterruptedException {
+		writer.shutdown();
+		writer.awaitTermination(10, TimeUnit.SECONDS);
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public boolean isDue(int height) {
+		return enabled && height > 0 && height % intervalBlocks == 0;
+	}
+
+	public Optional<CheckpointDto> getLatest() {
+		return Optional.ofNullable(latest);
+	}
+
+	// The caller captures the state; serialization and I/O happen off the commit path
+	public void saveAsync(CheckpointDto checkpoint) {
+		latest = checkpoint;
+		writer.execute(() -> save(checkpoint));
+	}
+
+	private void save(CheckpointDto checkpoint) {
+		Path target = checkpointDirectory
+				.resolve(String.format("%s%012d%s", CHECKPOINT_PREFIX, checkpoint.getHeight(), CHECKPOINT_SUFFIX));
+		Path temp = checkpointDirectory.resolve(target.getFileName() + ".tmp");
+		try {
+			// The cold tier may have grown since, which a restore drops again
+			if (checkpoint.getCold() != null) {
+				coldBlockStore.force();
+			}
+			objectMapper.writeValue(temp.toFile(), checkpoint);
+			Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			log.info("Wrote checkpoint at height {}", checkpoint.getHeight());
+			prune();
+		} catch (IOException | UncheckedIOException e) {
+			log.error("Failed to write checkpoint at height {}", checkpoint.getHeight(), e);
+		}
+	}
+
+	private void prune() throws IOException {
+		List<Path> checkpoints = listCheckpoints();
+		for (int i = 0; i < checkpoints.size() - retain; i++) {
+			Files.deleteIfExists(checkpoints.get(i));
+		}
+	}
+
+	public Optional<CheckpointDto> loadLatest() {
+		if (!enabled) {
+			return Optional.empty();
+		}
+		List<Path> checkpoints = listCheckpoints();
+		for (int i = checkpoints.size() - 1; i >= 0; i--) {
+			try {
+				CheckpointDto checkpoint = objectMapper.readValue(checkpoints.get(i).toFile(), CheckpointDto.class);
+				latest = checkpoint;
+				return Optional.of(checkpoint);
+			} catch (IOException e) {
+				log.warn("Skipping unreadable checkpoint {}", checkpoints.get(i), e);
+			}
+		}
+		return Optional.empty();
+	}
+
+	private List<Path> listCheckpoints() {
+		try (Stream<Path> files = Files.list(checkpointDirectory)) {
+			return files.filter(p -> {
+				String name = p.getFileName().toString();
+				return name.startsWith(CHECKPOINT_PREFIX) && name.endsWith(CHECKPOINT_SUFFIX);
+			}).sorted().toList();
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to list checkpoints", e);
+		}
+	}
+}
@@ -0,0 +1,419 @@
+package com.cs271.pa1.store;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.cs271.pa1.dto.BlockDto;
+import com.cs271.pa1.dto.ColdTierDto;
+import com.cs271.pa1.dto.TransactionDto;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+// Chunks spilled from ChainStore's hot window
+@Slf4j
+@Component
+public class ColdBlockStore {
+	private static final String SEGMENT_PREFIX = "cold-";
+	private static final String SEGMENT_SUFFIX = ".seg";
+	private static final int CHUNKS_PER_SEGMENT = 64;
+	private static final int TABLE_BYTES = (ChainStore.CHUNK_SIZE + 1) * 4;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	// The cold tier lives next to the block log and only runs with it
+	@Value("${blockchain.store.enabled:false}")
+	private boolean storeEnabled;
+
+	// Blocks kept on heap behind the head; 0 keeps the whole chain there
+	@Value("${blockchain.chain.hot-blocks:65536}")
+	private int hotBlocks;
+
+	@Value("${blockchain.chain.cache-blocks:8192}")
+	private int cacheBlocks;
+
+	@Value("${blockchain.chain.cold-directory:${blockchain.store.directory:data/${server.port}}/cold}")
+	private String directory;
+
+	private Path coldDirectory;
+
+	private final List<FileChannel> segments = new ArrayList<>();
+
+	private long segmentEnd;
+
+	private long[] chunkPositions = new long[CHUNKS_PER_SEGMENT];
+
+	private volatile int chunks;
+
+	private volatile long bytes;
+
+	private ByteBuffer writeBuffer = ByteBuffer.allocate(1 << 18);
+
+	private BlockCache cache;
+
+	private MappedHeightIndex hashIndex;
+
+	private MappedHeightIndex transactionIndex;
+
+	public ColdBlockStore() {
+	}
+
+	public ColdBlockStore(Path directory, int hotBlocks, int cacheBlocks, MeterRegistry meterRegistry) {
+		this.storeEnabled = true;
+		this.directory = directory.toString();
+		this.hotBlocks = hotBlocks;
+		this.cacheBlocks = cacheBlocks;
+		this.meterRegistry = meterRegistry;
+	}
+
+	public boolean isEnabled() {
+		return storeEnabled && hotBlocks > 0;
+	}
+
+	public int getHotBlocks() {
+		return hotBlocks;
+	}
+
+	@PostConstruct
+	public void open() {
+		if (!isEnabled()) {
+			return;
+		}
+		if (hotBlocks < ChainStore.CHUNK_SIZE) {
+			throw new IllegalStateException("blockchain.chain.hot-blocks must be 0 or at least " + ChainStore.CHUNK_SIZE);
+		}
+		coldDirectory = Paths.get(directory);
+		cache = new BlockCache(cacheBlocks);
+		hashIndex = new MappedHeightIndex(coldDirectory, "hash");
+		transactionIndex = new MappedHeightIndex(coldDirectory, "transaction");
+
+		FunctionCounter.builder("cache.gets", cache, BlockCache::hits).tags("cache", "blocks", "result", "hit")
+				.description("Cold block reads served from the cache").register(meterRegistry);
+		FunctionCounter.builder("cache.gets", cache, BlockCache::misses).tags("cache", "blocks", "result", "miss")
+				.description("Cold block reads decoded from disk").register(meterRegistry);
+		FunctionCounter.builder("cache.evictions", cache, BlockCache::evictions).tag("cache", "blocks")
+				.register(meterRegistry);
+		Gauge.builder("cache.size", cache, BlockCache::size).tag("cache", "blocks").register(meterRegistry);
+		Gauge.builder("blockchain.cold.blocks", this, store -> (long) store.chunks * ChainStore.CHUNK_SIZE)
+				.description("Blocks spilled from the heap to cold segments").register(meterRegistry);
+		Gauge.builder("blockchain.cold.bytes", this, store -> store.bytes).baseUnit("bytes").register(meterRegistry);
+		log.info("Keeping {} blocks on heap, older ones in {}", hotBlocks, coldDirectory.toAbsolutePath());
+	}
+
+	@PreDestroy
+	public void close() {
+		for (FileChannel segment : segments) {
+			try {
+				segment.close();
+			} catch (IOException e) {
+				log.error("Failed to close cold segment", e);
+			}
+		}
+		segments.clear();
+	}
+
+	// Reopen the recorded chunks, dropping later ones
+	synchronized void restore(ColdTierDto tier) {
+		int restored = tier.getChunks();
+		int segmentCount = (restored + CHUNKS_PER_SEGMENT - 1) / CHUNKS_PER_SEGMENT;
+		try {
+			for (int i = 0;; i++) {
+				Path segment = segmentPath(i * CHUNKS_PER_SEGMENT);
+				if (!Files.exists(segment)) {
+					if (i < segmentCount) {
+						throw new IllegalStateException("Cold segment " + segment + " is missing");
+					}
+					break;
+				}
+				if (i < segmentCount) {
+					segments.add(FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE));
+				} else {
+					Files.delete(segment);
+				}
+			}
+			chunkPositions = new long[Math.max(CHUNKS_PER_SEGMENT, restored)];
+			for (int chunk = 0; chunk < restored; chunk++) {
+				long position = chunk % CHUNKS_PER_SEGMENT == 0 ? 0 : segmentEnd;
+				chunkPositions[chunk] = position;
+				segmentEnd = chunkEnd(segments.get(chunk / CHUNKS_PER_SEGMENT), position);
+				bytes += segmentEnd - position;
+			}
+			if (restored > 0) {
+				segments.get(segments.size() - 1).truncate(segmentEnd);
+			}
+			chunks = restored;
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to restore cold segments in " + coldDirectory, e);
+		}
+		hashIndex.restore(restored << ChainStore.CHUNK_SHIFT, tier.getHashKeys());
+		transactionIndex.restore(restored << ChainStore.CHUNK_SHIFT, tier.getTransactionKeys());
+		log.info("Restored {} cold blocks from {}", (long) restored * ChainStore.CHUNK_SIZE, coldDirectory);
+	}
+
+	// Past the account table, which follows the last block's end offset
+	private long chunkEnd(FileChannel segment, long position) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(4);
+		readFully(segment, header, position + ChainStore.CHUNK_SIZE * 4L);
+		long table = position + header.getInt(0);
+		header.clear();
+		readFully(segment, header, table);
+		return table + 4 + header.getInt(0);
+	}
+
+	// Makes everything spilled so far durable, for a checkpoint to record
+	synchronized void force() {
+		try {
+			for (FileChannel segment : segments) {
+				segment.force(false);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to sync cold segments in " + coldDirectory, e);
+		}
+		hashIndex.force();
+		transactionIndex.force();
+	}
+
+	// Drops every spilled chunk, for a recovery that could not reuse them
+	synchronized void clear() {
+		close();
+		chunks = 0;
+		bytes = 0;
+		segmentEnd = 0;
+		cache.clear();
+		deleteSegments();
+		hashIndex = new MappedHeightIndex(coldDirectory, "hash");
+		transactionIndex = new MappedHeightIndex(coldDirectory, "transaction");
+	}
+
+	// Drop segments from an earlier run
+	private void deleteSegments() {
+		if (!Files.isDirectory(coldDirectory)) {
+			return;
+		}
+		try (Stream<Path> files = Files.list(coldDirectory)) {
+			for (Path file : files.filter(p -> p.getFileName().toString().startsWith(SEGMENT_PREFIX)).toList()) {
+				Files.delete(file);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to clear cold segments in " + coldDirectory, e);
+		}
+	}
+
+	MappedHeightIndex hashIndex() {
+		return hashIndex;
+	}
+
+	MappedHeightIndex transactionIndex() {
+		return transactionIndex;
+	}
+
+	// Writes the oldest hot chunk, which must be full and directly follow the last one spilled
+	synchronized void spill(BlockDto[] chunk) {
+		Map<String, ShortList> accounts = heightsByAccount(chunk);
+		int maxSize = TABLE_BYTES + 8;
+		for (BlockDto block : chunk) {
+			maxSize += BlockCodec.maxEncodedSize(block);
+		}
+		for (Map.Entry<String, ShortList> account : accounts.entrySet()) {
+			maxSize += 2 + account.getKey().getBytes(StandardCharsets.UTF_8).length + 2 + 2 * account.getValue().size;
+		}
+		if (writeBuffer.capacity() < maxSize) {
+			writeBuffer = ByteBuffer.allocate(Integer.highestOneBit(maxSize) << 1);
+		}
+		ByteBuffer buffer = writeBuffer;
+		buffer.clear();
+		buffer.position(TABLE_BYTES);
+		for (int i = 0; i < chunk.length; i++) {
+			buffer.putInt(i * 4, buffer.position());
+			BlockCodec.encode(chunk[i], buffer);
+		}
+		buffer.putInt(chunk.length * 4, buffer.position());
+		putAccountHeights(buffer, accounts);
+		buffer.flip();
+
+		try {
+			if (chunks % CHUNKS_PER_SEGMENT == 0) {
+				rollSegment();
+			}
+			FileChannel segment = segments.get(segments.size() - 1);
+			if (chunks == chunkPositions.length) {
+				chunkPositions = Arrays.copyOf(chunkPositions, chunks << 1);
+			}
+			chunkPositions[chunks] = segmentEnd;
+			int length = buffer.remaining();
+			while (buffer.hasRemaining()) {
+				segmentEnd += segment.write(buffer, segmentEnd);
+			}
+			bytes += length;
+			chunks++;
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to spill blocks to " + coldDirectory, e);
+		}
+	}
+
+	// Heights within the chunk, in block order, each listed once however often a block moves it
+	private static Map<String, ShortList> heightsByAccount(BlockDto[] chunk) {
+		Map<String, ShortList> accounts = new LinkedHashMap<>();
+		for (int i = 0; i < chunk.length; i++) {
+			for (TransactionDto operation : chunk[i].operations()) {
+				accounts.computeIfAbsent(operation.getSender(), a -> new ShortList()).add((short) i);
+				accounts.computeIfAbsent(operation.getReceiver(), a -> new ShortList()).add((short) i);
+			}
+		}
+		return accounts;
+	}
+
+	// Account height table
+	private static void putAccountHeights(ByteBuffer buffer, Map<String, ShortList> accounts) {
+		int start = buffer.position();
+		buffer.position(start + 4);
+		buffer.putInt(accounts.size());
+		for (Map.Entry<String, ShortList> account : accounts.entrySet()) {
+			byte[] name = account.getKey().getBytes(StandardCharsets.UTF_8);
+			buffer.putShort((short) name.length);
+			buffer.put(name);
+			buffer.putShort((short) account.getValue().size);
+			for (int i = 0; i < account.getValue().size; i++) {
+				buffer.putShort(account.getValue().values[i]);
+			}
+		}
+		buffer.putInt(start, buffer.position() - start - 4);
+	}
+
+	private void rollSegment() throws IOException {
+		if (chunks == 0) {
+			deleteSegments();
+		}
+		Files.createDirectories(coldDirectory);
+		Path segment = segmentPath(chunks);
+		segments.add(FileChannel.open(segment, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+				StandardOpenOption.WRITE));
+		segmentEnd = 0;
+	}
+
+	private Path segmentPath(int chunk) {
+		return coldDirectory.resolve(String.format("%s%010d%s", SEGMENT_PREFIX, (long) chunk * ChainStore.CHUNK_SIZE,
+				SEGMENT_SUFFIX));
+	}
+
+	// A point read, through the cache
+	BlockDto read(int height) {
+		return cache.get(height, this::load);
+	}
+
+	private BlockDto load(int height) {
+		List<BlockDto> blocks = new ArrayList<>(1);
+		scan(height, height + 1, blocks::add);
+		return blocks.get(0);
+	}
+
+	// Decode a range, bypassing the cache
+	void scan(int from, int to, Consumer<BlockDto> consumer) {
+		try {
+			for (int height = from; height < to;) {
+				int chunk = height >>> ChainStore.CHUNK_SHIFT;
+				int first = height & ChainStore.CHUNK_MASK;
+				int last = Math.min(to - (chunk << ChainStore.CHUNK_SHIFT), ChainStore.CHUNK_SIZE);
+				FileChannel segment = segments.get(chunk / CHUNKS_PER_SEGMENT);
+				long position = chunkPositions[chunk];
+
+				ByteBuffer table = ByteBuffer.allocate((last - first + 1) * 4);
+				readFully(segment, table, position + first * 4L);
+				int start = table.getInt(0);
+				ByteBuffer records = ByteBuffer.allocate(table.getInt((last - first) * 4) - start);
+				readFully(segment, records, position + start);
+				records.flip();
+				for (int i = first; i < last; i++) {
+					BlockDto block = BlockCodec.decode(records);
+					// Heights follow from the position, as in BlockStreamCodec
+					block.setHeight(height++);
+					consumer.accept(block);
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to read cold blocks from " + coldDirectory, e);
+		}
+	}
+
+	// The heights in a spilled chunk that move the account, ascending
+	int[] accountHeights(int chunk, String account) {
+		try {
+			FileChannel segment = segments.get(chunk / CHUNKS_PER_SEGMENT);
+			long position = chunkPositions[chunk];
+			ByteBuffer header = ByteBuffer.allocate(4);
+			readFully(segment, header, position + ChainStore.CHUNK_SIZE * 4L);
+			position += header.getInt(0);
+			header.clear();
+			readFully(segment, header, position);
+			ByteBuffer table = ByteBuffer.allocate(header.getInt(0));
+			readFully(segment, table, position + 4);
+			table.flip();
+
+			byte[] wanted = account.getBytes(StandardCharsets.UTF_8);
+			int base = chunk << ChainStore.CHUNK_SHIFT;
+			for (int remaining = table.getInt(); remaining > 0; remaining--) {
+				byte[] name = new byte[Short.toUnsignedInt(table.getShort())];
+				table.get(name);
+				int[] heights = new int[Short.toUnsignedInt(table.getShort())];
+				if (!Arrays.equals(name, wanted)) {
+					table.position(table.position() + heights.length * 2);
+					continue;
+				}
+				for (int i = 0; i < heights.length; i++) {
+					heights[i] = base + table.getShort();
+				}
+				return heights;
+			}
+			return new int[0];
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to read cold account heights from " + coldDirectory, e);
+		}
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new EOFException("Cold segment ends before position " + (position + buffer.limit()));
+			}
+		}
+	}
+
+	private static final class ShortList {
+		private short[] values = new short[4];
+		private int size;
+
+		private void add(short value) {
+			if (size > 0 && values[size - 1] == value) {
+				return;
+			}
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size << 1);
+			}
+			values[size++] = value;
+		}
+	}
+}
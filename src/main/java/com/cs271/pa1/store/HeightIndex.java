@@ -0,0 +1,82 @@
+package com.cs271.pa1.store;
+
+import java.util.function.IntPredicate;
+
+// Heights by 64-bit key digest, linear probing
+final class HeightIndex {
+	private long[] keys = new long[16];
+	// height + 1, so 0 marks an empty slot
+	private int[] heights = new int[16];
+	private int size;
+
+	void put(long key, int height) {
+		if ((size + 1) * 4L > keys.length * 3L) {
+			resize();
+		}
+		insert(keys, heights, key, height + 1);
+		size++;
+	}
+
+	// The first height with this key that passes the check, or -1
+	int find(long key, IntPredicate check) {
+		int mask = keys.length - 1;
+		for (int slot = slot(key, mask); heights[slot] != 0; slot = (slot + 1) & mask) {
+			if (keys[slot] == key && check.test(heights[slot] - 1)) {
+				return heights[slot] - 1;
+			}
+		}
+		return -1;
+	}
+
+	// Later entries of the probe run shift back into the hole, so no lookup stops short at it
+	void remove(long key, int height) {
+		int mask = keys.length - 1;
+		int hole = slot(key, mask);
+		while (heights[hole] != 0 && (keys[hole] != key || heights[hole] != height + 1)) {
+			hole = (hole + 1) & mask;
+		}
+		if (heights[hole] == 0) {
+			return;
+		}
+		for (int next = (hole + 1) & mask; heights[next] != 0; next = (next + 1) & mask) {
+			// An entry may fill the hole when the hole lies between its home slot and itself
+			if (((next - slot(keys[next], mask)) & mask) >= ((next - hole) & mask)) {
+				keys[hole] = keys[next];
+				heights[hole] = heights[next];
+				hole = next;
+			}
+		}
+		heights[hole] = 0;
+		size--;
+	}
+
+	long bytes() {
+		return keys.length * (long) (Long.BYTES + Integer.BYTES);
+	}
+
+	private void resize() {
+		long[] newKeys = new long[keys.length << 1];
+		int[] newHeights = new int[heights.length << 1];
+		for (int slot = 0; slot < keys.length; slot++) {
+			if (heights[slot] != 0) {
+				insert(newKeys, newHeights, keys[slot], heights[slot]);
+			}
+		}
+		keys = newKeys;
+		heights = newHeights;
+	}
+
+	private static void insert(long[] keys, int[] heights, long key, int value) {
+		int mask = keys.length - 1;
+		int slot = slot(key, mask);
+		while (heights[slot] != 0) {
+			slot = (slot + 1) & mask;
+		}
+		keys[slot] = key;
+		heights[slot] = value;
+	}
+
+	private static int slot(long key, int mask) {
+		return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+	}
+}
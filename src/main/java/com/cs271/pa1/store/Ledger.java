@@ -0,0 +1,167 @@
+package com.cs271.pa1.store;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.StampedLock;
+
+// Balances as minor units in chunked arrays
+public class Ledger {
+	public static final int SCALE = 2;
+
+	private static final int CHUNK_SHIFT = 16;
+	private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+	private final Map<String, Integer> accountIds = new ConcurrentHashMap<>();
+
+	private final List<String> accountNames = new ArrayList<>();
+
+	private long[][] chunks = new long[1][CHUNK_SIZE];
+
+	private final StampedLock lock = new StampedLock();
+
+	public static long toMinorUnits(BigDecimal amount) {
+		return amount.scale() == 0 ? Math.multiplyExact(amount.longValueExact(), 100)
+				: amount.setScale(SCALE).unscaledValue().longValueExact();
+	}
+
+	public static boolean isRepresentable(BigDecimal amount) {
+		return amount != null && amount.stripTrailingZeros().scale() <= SCALE
+				&& amount.abs().compareTo(BigDecimal.valueOf(Long.MAX_VALUE, SCALE)) <= 0;
+	}
+
+	public static BigDecimal toDecimal(long minorUnits) {
+		return BigDecimal.valueOf(minorUnits, SCALE);
+	}
+
+	public int accountId(String name) {
+		Integer id = accountIds.get(name);
+		return id != null ? id : register(name);
+	}
+
+	public int findAccount(String name) {
+		return accountIds.getOrDefault(name, -1);
+	}
+
+	private int register(String name) {
+		long stamp = lock.writeLock();
+		try {
+			Integer existing = accountIds.get(name);
+			if (existing != null) {
+				return existing;
+			}
+			int id = accountNames.size();
+			int chunk = id >>> CHUNK_SHIFT;
+			if (chunk == chunks.length) {
+				long[][] grown = new long[chunks.length << 1][];
+				System.arraycopy(chunks, 0, grown, 0, chunks.length);
+				chunks = grown;
+			}
+			if (chunks[chunk] == null) {
+				chunks[chunk] = new long[CHUNK_SIZE];
+			}
+			accountNames.add(name);
+			accountIds.put(name, id);
+			return id;
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	public int size() {
+		return accountIds.size();
+	}
+
+	// Only trust what can be indexed until validated
+	public long balance(int id) {
+		long stamp = lock.tryOptimisticRead();
+		long[][] current = chunks;
+		int chunk = id >>> CHUNK_SHIFT;
+		long[] values = chunk < current.length ? current[chunk] : null;
+		long balance = values == null ? 0 : values[id & CHUNK_MASK];
+		if (!lock.validate(stamp)) {
+			stamp = lock.readLock();
+			try {
+				balance = read(id);
+			} finally {
+				lock.unlockRead(stamp);
+			}
+		}
+		return balance;
+	}
+
+	public long balance(String name) {
+		int id = findAccount(name);
+		return id < 0 ? 0 : balance(id);
+	}
+
+	private long read(int id) {
+		return chunks[id >>> CHUNK_SHIFT][id & CHUNK_MASK];
+	}
+
+	public void set(int id, long minorUnits) {
+		long stamp = lock.writeLock();
+		try {
+			chunks[id >>> CHUNK_SHIFT][id & CHUNK_MASK] = minorUnits;
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	// Debit and credit are applied together; readers never see one without the other
+	public void transfer(int from, int to, long minorUnits) {
+		long stamp = lock.writeLock();
+		try {
+			chunks[from >>> CHUNK_SHIFT][from & CHUNK_MASK] -= minorUnits;
+			chunks[to >>> CHUNK_SHIFT][to & CHUNK_MASK] += minorUnits;
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	public boolean tryTransfer(int from, int to, long minorUnits) {
+		long stamp = lock.writeLock();
+		try {
+			long[] fromChunk = chunks[from >>> CHUNK_SHIFT];
+			if (minorUnits <= 0 || fromChunk[from & CHUNK_MASK] < minorUnits) {
+				return false;
+			}
+			fromChunk[from & CHUNK_MASK] -= minorUnits;
+			chunks[to >>> CHUNK_SHIFT][to & CHUNK_MASK] += minorUnits;
+			return true;
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	public void clear() {
+		long stamp = lock.writeLock();
+		try {
+			for (long[] chunk : chunks) {
+				if (chunk != null) {
+					Arrays.fill(chunk, 0);
+				}
+			}
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	public Map<String, BigDecimal> snapshot() {
+		long stamp = lock.readLock();
+		try {
+			Map<String, BigDecimal> balances = new LinkedHashMap<>();
+			for (int id = 0; id < accountNames.size(); id++) {
+				balances.put(accountNames.get(id), toDecimal(read(id)));
+			}
+			return balances;
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+}
@@ -0,0 +1,230 @@
+package com.cs271.pa1.store;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.IntPredicate;
+import java.util.stream.Stream;
+
+// HeightIndex in a memory-mapped file
+final class MappedHeightIndex {
+	private static final int SLOT_BYTES = 16;
+	private static final int REGION_SHIFT = 26;
+	private static final long REGION_MASK = (1L << REGION_SHIFT) - 1;
+	private static final long INITIAL_SLOTS = 1 << 16;
+	private static final String SUFFIX = ".idx";
+
+	private final Path directory;
+
+	private final String name;
+
+	private MappedByteBuffer[] regions;
+
+	private long capacity;
+
+	private long size;
+
+	MappedHeightIndex(Path directory, String name) {
+		this.directory = directory;
+		this.name = name;
+	}
+
+	synchronized void put(long key, int height) {
+		if (regions == null) {
+			regions = map(INITIAL_SLOTS);
+			capacity = INITIAL_SLOTS;
+		} else if ((size + 1) * 4 > capacity * 3) {
+			resize();
+		}
+		insert(regions, capacity, key, height + 1);
+		size++;
+	}
+
+	// The first height with this key that passes the check, or -1
+	int find(long key, IntPredicate check) {
+		if (regions == null) {
+			return -1;
+		}
+		long mask = capacity - 1;
+		for (long slot = slot(key, mask);; slot = (slot + 1) & mask) {
+			int height = height(regions, slot);
+			if (height == 0) {
+				return -1;
+			}
+			if (key(regions, slot) == key && check.test(height - 1)) {
+				return height - 1;
+			}
+		}
+	}
+
+	long size() {
+		return size;
+	}
+
+	synchronized void force() {
+		if (regions != null) {
+			force(regions);
+		}
+	}
+
+	// Reopen the table, keeping heights below the given one
+	void restore(int belowHeight, long expectedKeys) {
+		long slots = Long.MAX_VALUE;
+		for (Path file : listFiles()) {
+			String name = file.getFileName().toString();
+			slots = Math.min(slots, Long.parseLong(name.substring(prefix().length(), name.length() - SUFFIX.length())));
+		}
+		if (slots == Long.MAX_VALUE) {
+			if (expectedKeys != 0) {
+				throw new IllegalStateException("Index " + name + " is missing from " + directory);
+			}
+			return;
+		}
+		try {
+			for (Path file : listFiles()) {
+				if (!file.equals(file(slots))) {
+					Files.delete(file);
+				}
+			}
+			MappedByteBuffer[] mapped = map(slots, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			long kept = 0;
+			long dropped = 0;
+			for (long slot = 0; slot < slots; slot++) {
+				int height = height(mapped, slot);
+				if (height > belowHeight) {
+					dropped++;
+				} else if (height != 0) {
+					kept++;
+				}
+			}
+			if (kept != expectedKeys) {
+				throw new IllegalStateException("Index " + file(slots) + " holds " + kept + " keys below height "
+						+ belowHeight + ", expected " + expectedKeys);
+			}
+			if (dropped > 0) {
+				mapped = rebuild(mapped, slots, belowHeight);
+			}
+			regions = mapped;
+			capacity = slots;
+			size = kept;
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to restore index " + name + " in " + directory, e);
+		}
+	}
+
+	// Into a fresh file of the same size, so the kept entries need no probe run repair
+	private MappedByteBuffer[] rebuild(MappedByteBuffer[] mapped, long slots, int belowHeight) throws IOException {
+		Path old = file(slots).resolveSibling(file(slots).getFileName() + ".old");
+		Files.move(file(slots), old, StandardCopyOption.REPLACE_EXISTING);
+		MappedByteBuffer[] rebuilt = map(slots);
+		for (long slot = 0; slot < slots; slot++) {
+			int height = height(mapped, slot);
+			if (height != 0 && height <= belowHeight) {
+				insert(rebuilt, slots, key(mapped, slot), height);
+			}
+		}
+		force(rebuilt);
+		Files.delete(old);
+		return rebuilt;
+	}
+
+	// The new table is forced before the old one goes, so a crash keeps one complete
+	private void resize() {
+		long newCapacity = capacity << 1;
+		MappedByteBuffer[] newRegions = map(newCapacity);
+		for (long slot = 0; slot < capacity; slot++) {
+			int height = height(regions, slot);
+			if (height != 0) {
+				insert(newRegions, newCapacity, key(regions, slot), height);
+			}
+		}
+		force(newRegions);
+		delete(capacity);
+		regions = newRegions;
+		capacity = newCapacity;
+	}
+
+	private MappedByteBuffer[] map(long slots) {
+		return map(slots, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+	}
+
+	private MappedByteBuffer[] map(long slots, StandardOpenOption... options) {
+		try {
+			Files.createDirectories(directory);
+			try (FileChannel channel = FileChannel.open(file(slots), options)) {
+				long regionSlots = Math.min(slots, 1L << REGION_SHIFT);
+				MappedByteBuffer[] mapped = new MappedByteBuffer[(int) (slots / regionSlots)];
+				for (int i = 0; i < mapped.length; i++) {
+					mapped[i] = channel.map(FileChannel.MapMode.READ_WRITE, i * regionSlots * SLOT_BYTES,
+							regionSlots * SLOT_BYTES);
+				}
+				return mapped;
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to map index " + file(slots), e);
+		}
+	}
+
+	// The old mapping stays valid until it is collected, so the file can go at once
+	private void delete(long slots) {
+		try {
+			Files.deleteIfExists(file(slots));
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to delete index " + file(slots), e);
+		}
+	}
+
+	private Path file(long slots) {
+		return directory.resolve(prefix() + slots + SUFFIX);
+	}
+
+	private String prefix() {
+		return "cold-" + name + "-";
+	}
+
+	private Path[] listFiles() {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.filter(p -> {
+				String file = p.getFileName().toString();
+				return file.startsWith(prefix()) && file.endsWith(SUFFIX);
+			}).toArray(Path[]::new);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to list indexes in " + directory, e);
+		}
+	}
+
+	private static void force(MappedByteBuffer[] regions) {
+		for (MappedByteBuffer region : regions) {
+			region.force();
+		}
+	}
+
+	private static void insert(MappedByteBuffer[] regions, long capacity, long key, int value) {
+		long mask = capacity - 1;
+		long slot = slot(key, mask);
+		while (height(regions, slot) != 0) {
+			slot = (slot + 1) & mask;
+		}
+		MappedByteBuffer region = regions[(int) (slot >>> REGION_SHIFT)];
+		int offset = (int) (slot & REGION_MASK) * SLOT_BYTES;
+		region.putLong(offset, key);
+		region.putInt(offset + Long.BYTES, value);
+	}
+
+	private static long key(MappedByteBuffer[] regions, long slot) {
+		return regions[(int) (slot >>> REGION_SHIFT)].getLong((int) (slot & REGION_MASK) * SLOT_BYTES);
+	}
+
+	private static int height(MappedByteBuffer[] regions, long slot) {
+		return regions[(int) (slot >>> REGION_SHIFT)].getInt((int) (slot & REGION_MASK) * SLOT_BYTES + Long.BYTES);
+	}
+
+	private static long slot(long key, long mask) {
+		return ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+	}
+}
@@ -0,0 +1,272 @@
+package com.cs271.pa1.cluster;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+import java.util.stream.IntStream;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.cs271.pa1.Pa1Application;
+import com.cs271.pa1.dto.BlockDto;
+import com.cs271.pa1.dto.Request;
+import com.cs271.pa1.dto.VerificationResultDto;
+import com.cs271.pa1.proxy.LossyNetwork;
+import com.cs271.pa1.service.BlockchainService;
+import com.cs271.pa1.service.CoalescingMutex;
+import com.cs271.pa1.service.DistributedMutex;
+import com.cs271.pa1.service.FencedMutex;
+import com.cs271.pa1.service.ResourceMutex;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+// Starts N application contexts in one JVM
+public class LocalCluster implements AutoCloseable {
+	public static final int BASE_PORT = 20000;
+
+	private final LossyNetwork network = new LossyNetwork();
+
+	private final List<ConfigurableApplicationContext> nodes = new ArrayList<>();
+
+	private final Map<String, AtomicInteger> occupancy = new ConcurrentHashMap<>();
+
+	private final AtomicInteger maxInCriticalSection = new AtomicInteger();
+
+	private LocalCluster() {
+	}
+
+	public static LocalCluster start(int size) {
+		return start(size, Map.of());
+	}
+
+	public static LocalCluster start(int size, Map<String, String> overrides) {
+		LocalCluster cluster = new LocalCluster();
+		String ports = IntStream.range(0, size).mapToObj(i -> String.valueOf(BASE_PORT + i))
+				.collect(Collectors.joining(","));
+		try {
+			for (int i = 0; i < size; i++) {
+				Map<String, String> properties = defaults();
+				properties.put("server.port", String.valueOf(BASE_PORT + i));
+				properties.put("cluster.ports", ports);
+				properties.putAll(overrides);
+				ConfigurableApplicationContext node = cluster.startNode(properties);
+				cluster.nodes.add(node);
+				BlockchainService service = node.getBean(BlockchainService.class);
+				ReflectionTestUtils.setField(service, "mutexService",
+						cluster.new MonitoredMutex(node.getBean(DistributedMutex.class)));
+			}
+		} catch (RuntimeException e) {
+			cluster.close();
+			throw e;
+		}
+		return cluster;
+	}
+
+	private static Map<String, String> defaults() {
+		Map<String, String> properties = new LinkedHashMap<>();
+		properties.put("spring.main.web-application-type", "none");
+		properties.put("spring.main.banner-mode", "off");
+		properties.put("logging.level.root", "WARN");
+		properties.put("peer.transport", "memory");
+		properties.put("mutex.algorithm", "lamport");
+		properties.put("latency.defaults.mode", "none");
+		properties.put("blockchain.store.enabled", "false");
+		properties.put("blockchain.checkpoint.enabled", "false");
+		properties.put("blockchain.verify-on-startup", "false");
+		properties.put("management.metrics.use-global-registry", "false");
+		return properties;
+	}
+
+	// Passed as command line arguments so they take precedence over application.properties
+	private ConfigurableApplicationContext startNode(Map<String, String> properties) {
+		String[] args = properties.entrySet().stream().map(e -> "--" + e.getKey() + "=" + e.getValue())
+				.toArray(String[]::new);
+		return new SpringApplicationBuilder(Pa1Application.class)
+				.initializers(context -> context.getBeanFactory().registerSingleton("inMemoryNetwork", network))
+				.run(args);
+	}
+
+	public int size() {
+		return nodes.size();
+	}
+
+	public BlockchainService node(int index) {
+		return nodes.get(index).getBean(BlockchainService.class);
+	}
+
+	public DistributedMutex mutex(int index) {
+		return nodes.get(index).getBean(DistributedMutex.class);
+	}
+
+	public <T> T bean(int index, Class<T> type) {
+		return nodes.get(index).getBean(type);
+	}
+
+	public MeterRegistry registry(int index) {
+		return nodes.get(index).getBean(MeterRegistry.class);
+	}
+
+	public LossyNetwork getNetwork() {
+		return network;
+	}
+
+	// Most nodes seen holding the same account at once
+	public int getMaxInCriticalSection() {
+		return maxInCriticalSection.get();
+	}
+
+	public boolean awaitConvergence(long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		while (System.nanoTime() < deadline) {
+			int height = node(0).getChainHeight();
+			if (IntStream.range(1, nodes.size()).allMatch(i -> node(i).getChainHeight() == height)) {
+				return true;
+			}
+			Thread.sleep(10);
+		}
+		return false;
+	}
+
+	// Empty when every node holds a valid chain identical to node 0's and a ledger matching it
+	public List<String> checkConsistency() {
+		List<String> errors = new ArrayList<>();
+		List<BlockDto> reference = blocks(0);
+		for (int i = 0; i < nodes.size(); i++) {
+			VerificationResultDto result = node(i).verifyChain();
+			if (!result.isValid()) {
+				errors.add("Node " + i + " failed verification: " + result.getErrors());
+			}
+			for (Map.Entry<String, BigDecimal> balance : result.getBalances().entrySet()) {
+				if (node(i).checkBalance(balance.getKey()).compareTo(balance.getValue()) != 0) {
+					errors.add("Node " + i + " ledger disagrees with its chain for " + balance.getKey());
+				}
+			}
+			if (i > 0 && !blocks(i).equals(reference)) {
+				errors.add("Node " + i + " chain differs from node 0");
+			}
+		}
+		return errors;
+	}
+
+	private List<BlockDto> blocks(int index) {
+		return node(index).getBlocks(0, node(index).getChainHeight());
+	}
+
+	// Counts nodes holding each locked account
+	private class MonitoredMutex implements ResourceMutex, CoalescingMutex, FencedMutex {
+		private static final List<String> LEDGER = List.of("*");
+
+		private final DistributedMutex delegate;
+
+		private List<String> held = LEDGER;
+
+		MonitoredMutex(DistributedMutex delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public String getProcessId() {
+			return delegate.getProcessId();
+		}
+
+		@Override
+		public void requestMutex() {
+			held = LEDGER;
+			delegate.requestMutex();
+		}
+
+		@Override
+		public void requestMutex(List<String> resources) {
+			held = resources;
+			((ResourceMutex) delegate).requestMutex(resources);
+		}
+
+		@Override
+		public boolean acquire(long timeout, TimeUnit unit) throws InterruptedException {
+			boolean acquired = delegate.acquire(timeout, unit);
+			if (acquired) {
+				for (String resource : held) {
+					int holders = occupancy.computeIfAbsent(resource, r -> new AtomicInteger()).incrementAndGet();
+					maxInCriticalSection.accumulateAndGet(holders, Math::max);
+				}
+			}
+			return acquired;
+		}
+
+		@Override
+		public void releaseMutex() {
+			held.forEach(resource -> occupancy.get(resource).decrementAndGet());
+			delegate.releaseMutex();
+		}
+
+		@Override
+		public void releaseBeforeRequest() {
+			held.forEach(resource -> occupancy.get(resource).decrementAndGet());
+			((CoalescingMutex) delegate).releaseBeforeRequest();
+		}
+
+		@Override
+		public void attachBlock(BlockDto block) {
+			((CoalescingMutex) delegate).attachBlock(block);
+		}
+
+		@Override
+		public void setBlockReceiver(Consumer<BlockDto> receiver) {
+			((CoalescingMutex) delegate).setBlockReceiver(receiver);
+		}
+
+		@Override
+		public void setReleaseHeight(IntSupplier height) {
+			((FencedMutex) delegate).setReleaseHeight(height);
+		}
+
+		@Override
+		public int getReleasedHeight() {
+			return ((FencedMutex) delegate).getReleasedHeight();
+		}
+
+		@Override
+		public void cancelRequest() {
+			delegate.cancelRequest();
+		}
+
+		@Override
+		public boolean isInCriticalSection() {
+			return delegate.isInCriticalSection();
+		}
+
+		@Override
+		public Request currentRequest() {
+			return ((ResourceMutex) delegate).currentRequest();
+		}
+
+		@Override
+		public List<Request> pendingBefore() {
+			return ((ResourceMutex) delegate).pendingBefore();
+		}
+
+		@Override
+		public void addReleaseListener(BiConsumer<String, Long> listener) {
+			((ResourceMutex) delegate).addReleaseListener(listener);
+		}
+	}
+
+	@Override
+	public void close() {
+		for (int i = nodes.size() - 1; i >= 0; i--) {
+			nodes.get(i).close();
+		}
+		nodes.clear();
+	}
+}
@@ -0,0 +1,446 @@
+package com.cs271.pa1.cluster;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.cs271.pa1.dto.BlockDto;
+import com.cs271.pa1.dto.BlockHash;
+import com.cs271.pa1.dto.InclusionProofDto;
+import com.cs271.pa1.dto.TransactionDto;
+import com.cs271.pa1.dto.WorkloadReportDto;
+import com.cs271.pa1.proxy.TcpPeerTransport;
+import com.cs271.pa1.service.BlockchainService;
+import com.cs271.pa1.service.LoadGeneratorService;
+import com.cs271.pa1.service.MerkleTree;
+import com.cs271.pa1.service.WorkloadProperties;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.search.Search;
+
+class LocalClusterTests {
+	private static final int TRANSFERS_PER_NODE = 25;
+
+	private static final Map<String, String> LATENCY = Map.of("latency.defaults.mode", "uniform",
+			"latency.defaults.min-ms", "0", "latency.defaults.max-ms", "2");
+
+	@Test
+	void concurrentTransfersKeepMutualExclusionAndIdenticalChains() throws Exception {
+		try (LocalCluster cluster = LocalCluster.start(4, LATENCY)) {
+			runTransfers(cluster, new String[] { "A", "B", "C" });
+		}
+	}
+
+	@Test
+	void accountScopeKeepsPerAccountExclusionAndIdenticalChains() throws Exception {
+		Map<String, String> properties = new HashMap<>(LATENCY);
+		properties.put("mutex.scope", "account");
+		properties.put("blockchain.accounts", "A,B,C,D,E,F");
+		try (LocalCluster cluster = LocalCluster.start(4, properties)) {
+			runTransfers(cluster, new String[] { "A", "B", "C", "D", "E", "F" });
+		}
+	}
+
+	@Test
+	void coalescingCarriesBlocksOnReleasesAndCutsMessages() throws Exception {
+		Map<String, String> properties = new HashMap<>(LATENCY);
+		properties.put("mutex.coalescing.enabled", "true");
+		try (LocalCluster cluster = LocalCluster.start(4, properties)) {
+			int committed = runTransfers(cluster, new String[] { "A", "B", "C" }, 2);
+
+			// Without coalescing each transfer costs a request, reply, release and block per peer
+			int peers = cluster.size() - 1;
+			assertEquals(committed * peers, count(cluster, "protocol.messages.piggybacked", "block"));
+			assertTrue(count(cluster, "protocol.messages", null) <= 3 * committed * peers);
+		}
+	}
+
+	@Test
+	void tcpTransportResendsAcrossDroppedConnections() throws Exception {
+		Map<String, String> properties = new HashMap<>(LATENCY);
+		properties.put("peer.transport", "tcp");
+		try (LocalCluster cluster = LocalCluster.start(3, properties)) {
+			int committed = commitTransfersDroppingConnections(cluster);
+			assertConverged(cluster, committed);
+			assertTrue(count(cluster, "peer.message.failures", "tcp-batch") > 0);
+			assertEquals(0, count(cluster, "peer.message.failures", "tcp-lost"));
+		}
+	}
+
+	// Retaining a single frame, a dropped connection loses whatever was in flight
+	@Test
+	void tcpTransportResyncsFramesLostBeyondTheReplayWindow() throws Exception {
+		Map<String, String> properties = new HashMap<>(LATENCY);
+		properties.put("peer.transport", "tcp");
+		properties.put("peer.tcp.replay-window-bytes", "1");
+		properties.put("blockchain.replication.gap-timeout-ms", "200");
+		// Missing blocks are fetched over the peers' HTTP ports
+		properties.put("spring.main.web-application-type", "servlet");
+		try (LocalCluster cluster = LocalCluster.start(3, properties)) {
+			int committed = commitTransfersDroppingConnections(cluster);
+			// A block lost after the last release is fetched once the next holder needs it
+			for (int i = 0; i < cluster.size(); i++) {
+				assertTrue(cluster.node(i)
+						.initiateTransaction(TransactionDto.createTransaction("A", "B", new BigDecimal("0.01"))));
+			}
+			assertConverged(cluster, committed + cluster.size());
+			assertTrue(count(cluster, "peer.message.failures", "tcp-lost") > 0);
+		}
+	}
+
+	private int commitTransfersDroppingConnections(LocalCluster cluster) throws Exception {
+		Thread dropper = new Thread(() -> {
+			try {
+				for (int round = 0; !Thread.currentThread().isInterrupted(); round++) {
+					Thread.sleep(50);
+					dropConnections(cluster.bean(round % cluster.size(), TcpPeerTransport.class));
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		dropper.start();
+		try {
+			return commitTransfers(cluster, new String[] { "A", "B", "C" }, 1);
+		} finally {
+			dropper.interrupt();
+			dropper.join();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static void dropConnections(TcpPeerTransport transport) {
+		List<SocketChannel> channels = (List<SocketChannel>) ReflectionTestUtils.getField(transport,
+				"inboundChannels");
+		synchronized (channels) {
+			for (SocketChannel channel : channels) {
+				try {
+					channel.close();
+				} catch (IOException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		}
+	}
+
+	@Test
+	void laggingNodeBuffersLaterBlocksAndFetchesTheMissingRange() throws Exception {
+		Map<String, String> properties = new HashMap<>(LATENCY);
+		properties.put("broadcast.mode", "quorum");
+		properties.put("blockchain.replication.gap-timeout-ms", "200");
+		try (LocalCluster cluster = LocalCluster.start(3, properties)) {
+			String lagging = String.valueOf(LocalCluster.BASE_PORT + 2);
+			cluster.getNetwork().setLossFilter((type, processId) -> "block".equals(type) && lagging.equals(processId));
+			for (int n = 0; n < 5; n++) {
+				assertTrue(cluster.node(0).initiateTransaction(
+						TransactionDto.createTransaction("A", "B", new BigDecimal("0.01"))));
+			}
+			assertEquals(0, cluster.node(2).getChainHeight());
+
+			cluster.getNetwork().setLossFilter((type, processId) -> false);
+			assertTrue(cluster.node(0)
+					.initiateTransaction(TransactionDto.createTransaction("B", "C", new BigDecimal("0.01"))));
+
+			assertTrue(cluster.awaitConvergence(10, TimeUnit.SECONDS));
+			assertEquals(6, cluster.node(2).getChainHeight());
+			assertTrue(count(cluster, "replication.catchup.blocks", null) >= 5);
+			List<String> errors = cluster.checkConsistency();
+			assertTrue(errors.isEmpty(), errors::toString);
+		}
+	}
+
+	@Test
+	void quorumBroadcastWithSeveralWritersKeepsIdenticalChains() throws Exception {
+		Map<String, String> properties = new HashMap<>(LATENCY);
+		properties.put("broadcast.mode", "quorum");
+		properties.put("blockchain.replication.gap-timeout-ms", "50");
+		try (LocalCluster cluster = LocalCluster.start(3, properties)) {
+			// Node 2 gets no broadcast blocks, so it enters the mutex behind every other holder
+			String lagging = String.valueOf(LocalCluster.BASE_PORT + 2);
+			cluster.getNetwork().setLossFilter((type, processId) -> "block".equals(type) && lagging.equals(processId));
+			AtomicInteger committed = new AtomicInteger();
+			List<Thread> clients = new ArrayList<>();
+			for (int i = 0; i < cluster.size(); i++) {
+				int node = i;
+				Thread client = new Thread(() -> {
+					for (int n = 0; n < 10; n++) {
+						if (cluster.node(node).initiateTransaction(
+								TransactionDto.createTransaction("A", "B", new BigDecimal("0.01")))) {
+							committed.incrementAndGet();
+						}
+					}
+				});
+				clients.add(client);
+				client.start();
+			}
+			for (Thread client : clients) {
+				client.join();
+			}
+			cluster.getNetwork().setLossFilter((type, processId) -> false);
+			assertTrue(cluster.node(2)
+					.initiateTransaction(TransactionDto.createTransaction("B", "C", new BigDecimal("0.01"))));
+
+			assertEquals(30, committed.get());
+			assertTrue(cluster.awaitConvergence(10, TimeUnit.SECONDS));
+			assertEquals(31, cluster.node(0).getChainHeight());
+			assertEquals(new BigDecimal("9.70"), cluster.node(2).checkBalance("A"));
+			assertEquals(1, cluster.getMaxInCriticalSection());
+			List<String> errors = cluster.checkConsistency();
+			assertTrue(errors.isEmpty(), errors::toString);
+		}
+	}
+
+	@Test
+	void transferAppliedLocallyCommitsWhenItsBroadcastFallsShort() throws Exception {
+		Map<String, String> properties = new HashMap<>(LATENCY);
+		properties.put("blockchain.replication.gap-timeout-ms", "50");
+		try (LocalCluster cluster = LocalCluster.start(3, properties)) {
+			String lagging = String.valueOf(LocalCluster.BASE_PORT + 2);
+			cluster.getNetwork().setLossFilter((type, processId) -> "block".equals(type) && lagging.equals(processId));
+			assertTrue(cluster.node(0)
+					.initiateTransaction(TransactionDto.createTransaction("A", "B", new BigDecimal("0.01"))));
+			assertEquals(1, count(cluster, "broadcast.degraded", null));
+			assertEquals(1, count(cluster, "transfers", "success", "outcome"));
+
+			// The node that missed the block catches up before it commits on top of it
+			cluster.getNetwork().setLossFilter((type, processId) -> false);
+			assertTrue(cluster.node(2)
+					.initiateTransaction(TransactionDto.createTransaction("B", "C", new BigDecimal("0.01"))));
+			assertTrue(cluster.awaitConvergence(10, TimeUnit.SECONDS));
+			assertEquals(2, cluster.node(1).getChainHeight());
+			List<String> errors = cluster.checkConsistency();
+			assertTrue(errors.isEmpty(), errors::toString);
+		}
+	}
+
+	@Test
+	void blockThatDoesNotLinkIsRejectedAndTheRealOneFetched() throws Exception {
+		Map<String, String> properties = new HashMap<>(LATENCY);
+		properties.put("blockchain.replication.gap-timeout-ms", "50");
+		try (LocalCluster cluster = LocalCluster.start(2, properties)) {
+			assertTrue(cluster.node(0)
+					.initiateTransaction(TransactionDto.createTransaction("A", "B", new BigDecimal("0.01"))));
+			assertTrue(cluster.awaitConvergence(10, TimeUnit.SECONDS));
+			String lagging = String.valueOf(LocalCluster.BASE_PORT + 1);
+			cluster.getNetwork().setLossFilter((type, processId) -> "block".equals(type) && lagging.equals(processId));
+			assertTrue(cluster.node(0)
+					.initiateTransaction(TransactionDto.createTransaction("B", "C", new BigDecimal("0.01"))));
+			cluster.getNetwork().setLossFilter((type, processId) -> false);
+
+			TransactionDto forgedTransfer = TransactionDto.createTransaction("C", "A", new BigDecimal("5.00"));
+			BlockDto forged = BlockDto.builder().transactions(List.of(forgedTransfer))
+					.merkleRoot(MerkleTree.root(List.of(forgedTransfer))).timestamp(0L).height(1)
+					.currentBlockHash(new BlockHash(1, 2, 3, 4)).build();
+			cluster.node(1).receiveBlock(forged);
+
+			assertTrue(cluster.awaitConvergence(10, TimeUnit.SECONDS));
+			assertEquals(2, cluster.node(1).getChainHeight());
+			assertTrue(cluster.node(1).getBlockByTransactionId(forgedTransfer.getTransactionId()).isEmpty());
+			assertEquals(new BigDecimal("10.01"), cluster.node(1).checkBalance("C"));
+			assertEquals(1, count(cluster, "replication.rejected", null));
+			List<String> errors = cluster.checkConsistency();
+			assertTrue(errors.isEmpty(), errors::toString);
+		}
+	}
+
+	@Test
+	void admissionRefusesOverspendingTransfersWithoutTheMutex() throws Exception {
+		try (LocalCluster cluster = LocalCluster.start(3, LATENCY)) {
+			// A holds 10.00, so only five of these fit even while all are pending at once
+			List<Thread> clients = new ArrayList<>();
+			AtomicInteger committed = new AtomicInteger();
+			for (int i = 0; i < 8; i++) {
+				Thread client = new Thread(() -> {
+					if (cluster.node(0)
+							.initiateTransaction(TransactionDto.createTransaction("A", "B", new BigDecimal("2.00")))) {
+						committed.incrementAndGet();
+					}
+				});
+				clients.add(client);
+				client.start();
+			}
+			for (Thread client : clients) {
+				client.join();
+			}
+			assertFalse(cluster.node(0)
+					.initiateTransaction(TransactionDto.createTransaction("C", "A", new BigDecimal("10.01"))));
+
+			assertEquals(5, committed.get());
+			assertEquals(4, count(cluster, "transfers", "refused", "outcome"));
+			assertEquals(5, cluster.registry(0).get("mutex.acquire").timer().count());
+			assertTrue(cluster.awaitConvergence(10, TimeUnit.SECONDS));
+			assertEquals(0, cluster.node(1).checkBalance("A").signum());
+		}
+	}
+
+	@Test
+	void backToBackTransfersCanSpendTheWholeBalance() throws Exception {
+		Map<String, String> properties = new HashMap<>(LATENCY);
+		properties.put("blockchain.group-commit.enabled", "true");
+		try (LocalCluster cluster = LocalCluster.start(2, properties)) {
+			BlockchainService node = cluster.node(0);
+			// The second is admitted as soon as the first commits, while its future completes
+			boolean both = node.submitTransaction(TransactionDto.createTransaction("A", "B", new BigDecimal("5.00")))
+					.thenCompose(first -> node
+							.submitTransaction(TransactionDto.createTransaction("A", "C", new BigDecimal("5.00")))
+							.thenApply(second -> first && second))
+					.get(10, TimeUnit.SECONDS);
+
+			assertTrue(both);
+			assertEquals(0, count(cluster, "transfers", "refused", "outcome"));
+			assertEquals(0, node.checkBalance("A").signum());
+		}
+	}
+
+	@Test
+	void groupCommitWritesBatchesUnderMerkleRootsWithVerifiableProofs() throws Exception {
+		Map<String, String> properties = new HashMap<>(LATENCY);
+		properties.put("blockchain.group-commit.enabled", "true");
+		properties.put("blockchain.group-commit.batch-size", "8");
+		properties.put("blockchain.group-commit.linger-ms", "20");
+		try (LocalCluster cluster = LocalCluster.start(3, properties)) {
+			String[] accounts = { "A", "B", "C" };
+			List<TransactionDto> transactions = new ArrayList<>();
+			List<CompletableFuture<Boolean>> results = new ArrayList<>();
+			for (int i = 0; i < 3 * TRANSFERS_PER_NODE; i++) {
+				TransactionDto transaction = TransactionDto.createTransaction(accounts[i % 3], accounts[(i + 1) % 3],
+						new BigDecimal("0.01"));
+				transactions.add(transaction);
+				results.add(cluster.node(i % cluster.size()).submitTransaction(transaction));
+			}
+			for (CompletableFuture<Boolean> result : results) {
+				assertTrue(result.get(30, TimeUnit.SECONDS));
+			}
+
+			assertTrue(cluster.awaitConvergence(10, TimeUnit.SECONDS));
+			int height = cluster.node(0).getChainHeight();
+			List<BlockDto> blocks = cluster.node(0).getBlocks(0, height);
+			assertTrue(height < transactions.size(), "expected batched blocks, got " + height);
+			assertEquals(transactions.size(), blocks.stream().mapToInt(block -> block.operations().size()).sum());
+			List<String> errors = cluster.checkConsistency();
+			assertTrue(errors.isEmpty(), errors::toString);
+
+			for (TransactionDto transaction : transactions) {
+				InclusionProofDto proof = cluster.node(1).getInclusionProof(transaction.getTransactionId())
+						.orElseThrow();
+				assertTrue(MerkleTree.verify(proof));
+				if (proof.getHeight() + 1 < height) {
+					assertEquals(proof.getBlockHash(), blocks.get(proof.getHeight() + 1).getCurrentBlockHash());
+				}
+			}
+		}
+	}
+
+	@Test
+	void submissionsAfterShutdownAreNotCommitted() throws Exception {
+		Map<String, String> properties = new HashMap<>(LATENCY);
+		properties.put("blockchain.group-commit.enabled", "true");
+		try (LocalCluster cluster = LocalCluster.start(2, properties)) {
+			cluster.node(0).stopCommitter();
+			CompletableFuture<Boolean> result = cluster.node(0)
+					.submitTransaction(TransactionDto.createTransaction("A", "B", new BigDecimal("0.01")));
+
+			assertFalse(result.get(5, TimeUnit.SECONDS));
+			assertFalse(cluster.node(0)
+					.initiateTransaction(TransactionDto.createTransaction("A", "B", new BigDecimal("0.01"))));
+			assertEquals(0, cluster.node(0).getChainHeight());
+		}
+	}
+
+	@Test
+	void loadRunReportsMeasuredTransfers() throws Exception {
+		try (LocalCluster cluster = LocalCluster.start(3, LATENCY)) {
+			WorkloadProperties workload = new WorkloadProperties();
+			workload.setClients(2);
+			workload.setWarmupSeconds(1);
+			workload.setDurationSeconds(2);
+			workload.setAccountDistribution("zipf");
+			workload.setAmountDistribution("uniform");
+			workload.setMaxAmount(new BigDecimal("0.50"));
+
+			WorkloadReportDto report = cluster.bean(0, LoadGeneratorService.class).run(workload);
+
+			assertTrue(report.getCommitted() > 0);
+			assertEquals(report.getSubmitted(), report.getCommitted() + report.getRejected());
+			assertTrue(report.getP50Ms() <= report.getP99Ms());
+			assertTrue(cluster.awaitConvergence(10, TimeUnit.SECONDS));
+			List<String> errors = cluster.checkConsistency();
+			assertTrue(errors.isEmpty(), errors::toString);
+		}
+	}
+
+	// Transfers between neighbouring accounts
+	private void runTransfers(LocalCluster cluster, String[] accounts) throws Exception {
+		runTransfers(cluster, accounts, 1);
+	}
+
+	private int runTransfers(LocalCluster cluster, String[] accounts, int clientsPerNode) throws Exception {
+		int committed = commitTransfers(cluster, accounts, clientsPerNode);
+		assertConverged(cluster, committed);
+		return committed;
+	}
+
+	private int commitTransfers(LocalCluster cluster, String[] accounts, int clientsPerNode) throws Exception {
+		AtomicInteger committed = new AtomicInteger();
+		List<Thread> clients = new ArrayList<>();
+		for (int i = 0; i < cluster.size() * clientsPerNode; i++) {
+			int node = i % cluster.size();
+			Thread client = new Thread(() -> {
+				for (int n = 0; n < TRANSFERS_PER_NODE; n++) {
+					String sender = accounts[(2 * node + n) % accounts.length];
+					String receiver = accounts[(2 * node + n + 1) % accounts.length];
+					if (cluster.node(node).initiateTransaction(
+							TransactionDto.createTransaction(sender, receiver, new BigDecimal("0.01")))) {
+						committed.incrementAndGet();
+					}
+				}
+			});
+			clients.add(client);
+			client.start();
+		}
+		for (Thread client : clients) {
+			client.join();
+		}
+
+		assertEquals(cluster.size() * clientsPerNode * TRANSFERS_PER_NODE, committed.get());
+		return committed.get();
+	}
+
+	private void assertConverged(LocalCluster cluster, int height) throws Exception {
+		assertTrue(cluster.awaitConvergence(10, TimeUnit.SECONDS));
+		assertEquals(height, cluster.node(0).getChainHeight());
+		assertEquals(1, cluster.getMaxInCriticalSection());
+		List<String> errors = cluster.checkConsistency();
+		assertTrue(errors.isEmpty(), errors::toString);
+	}
+
+	private long count(LocalCluster cluster, String name, String type) {
+		return count(cluster, name, type, "type");
+	}
+
+	private long count(LocalCluster cluster, String name, String value, String tag) {
+		long total = 0;
+		for (int i = 0; i < cluster.size(); i++) {
+			Search search = cluster.registry(i).find(name);
+			if (value != null) {
+				search = search.tag(tag, value);
+			}
+			total += (long) search.counters().stream().mapToDouble(Counter::count).sum();
+		}
+		return total;
+	}
+}
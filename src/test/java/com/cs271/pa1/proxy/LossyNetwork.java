@@ -0,0 +1,17 @@
+package com.cs271.pa1.proxy;
+
+import java.util.function.BiPredicate;
+
+// Messages matching the filter, by type and receiving process id, are lost as on a lossy link
+public class LossyNetwork extends InMemoryNetwork {
+	private volatile BiPredicate<String, String> lossFilter = (type, processId) -> false;
+
+	public void setLossFilter(BiPredicate<String, String> lossFilter) {
+		this.lossFilter = lossFilter;
+	}
+
+	@Override
+	boolean isLost(String type, String processId) {
+		return lossFilter.test(type, processId);
+	}
+}
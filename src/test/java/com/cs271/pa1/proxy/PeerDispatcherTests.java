@@ -0,0 +1,103 @@
+package com.cs271.pa1.proxy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class PeerDispatcherTests {
+	private static final String PEER = "http://localhost:8081";
+
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+	private final PeerDispatcher dispatcher = new PeerDispatcher();
+
+	PeerDispatcherTests() {
+		ReflectionTestUtils.setField(dispatcher, "meterRegistry", registry);
+		ReflectionTestUtils.setField(dispatcher, "queueCapacity", 4);
+		ReflectionTestUtils.setField(dispatcher, "offerTimeoutMs", 50L);
+	}
+
+	@AfterEach
+	void stop() {
+		dispatcher.stop();
+	}
+
+	@Test
+	void sendsToAPeerInQueueOrder() throws Exception {
+		List<Integer> sent = Collections.synchronizedList(new ArrayList<>());
+		CountDownLatch done = new CountDownLatch(100);
+		for (int i = 0; i < 100; i++) {
+			int n = i;
+			dispatcher.send(PEER, () -> {
+				sent.add(n);
+				done.countDown();
+			});
+		}
+
+		// Sends are timed after they run
+		CountDownLatch timed = new CountDownLatch(1);
+		dispatcher.send(PEER, timed::countDown);
+
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertTrue(timed.await(5, TimeUnit.SECONDS));
+		for (int i = 0; i < 100; i++) {
+			assertEquals(i, sent.get(i));
+		}
+		assertTrue(registry.get("peer.outbound.latency").tag("peer", PEER).timer().count() >= 100);
+	}
+
+	@Test
+	void holdsSendersBackWhileTheQueueIsFullAndDropsNothing() throws Exception {
+		CountDownLatch sending = new CountDownLatch(1);
+		CountDownLatch blocked = new CountDownLatch(1);
+		dispatcher.send(PEER, () -> {
+			sending.countDown();
+			try {
+				blocked.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		assertTrue(sending.await(5, TimeUnit.SECONDS));
+
+		List<Integer> sent = Collections.synchronizedList(new ArrayList<>());
+		CountDownLatch done = new CountDownLatch(6);
+		Thread sender = new Thread(() -> {
+			for (int i = 0; i < 6; i++) {
+				int n = i;
+				dispatcher.send(PEER, () -> {
+					sent.add(n);
+					done.countDown();
+				});
+			}
+		});
+		sender.start();
+		Thread.sleep(200);
+		assertTrue(sender.isAlive());
+		assertEquals(4, registry.get("peer.outbound.queue.depth").tag("peer", PEER).gauge().value());
+		assertTrue(registry.get("peer.outbound.stalled").tag("peer", PEER).counter().count() >= 1);
+
+		blocked.countDown();
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertEquals(List.of(0, 1, 2, 3, 4, 5), sent);
+	}
+
+	@Test
+	void failsASendThatCannotBeQueued() {
+		dispatcher.stop();
+		assertThrows(IllegalStateException.class, () -> dispatcher.send(PEER, () -> {
+		}));
+	}
+}
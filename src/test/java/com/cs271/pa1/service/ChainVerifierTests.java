@@ -0,0 +1,66 @@
+package com.cs271.pa1.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+import com.cs271.pa1.dto.BlockDto;
+import com.cs271.pa1.dto.BlockHash;
+import com.cs271.pa1.dto.TransactionDto;
+import com.cs271.pa1.dto.VerificationResultDto;
+import com.cs271.pa1.store.ChainStore;
+
+class ChainVerifierTests {
+
+	private final ChainVerifier verifier = new ChainVerifier(ForkJoinPool.commonPool());
+
+	private final Map<String, BigDecimal> initialBalances = Map.of("A", BigDecimal.TEN, "B", BigDecimal.TEN);
+
+	private ChainStore chain(int length, int overdraftAt) {
+		ChainStore chain = new ChainStore();
+		BlockDto previous = null;
+		for (int i = 0; i < length; i++) {
+			BigDecimal amount = i == overdraftAt ? BigDecimal.valueOf(100) : BigDecimal.ONE;
+			TransactionDto transaction = i % 2 == 0 ? TransactionDto.createTransaction("A", "B", amount)
+					: TransactionDto.createTransaction("B", "A", amount);
+			BlockDto block = BlockDto.builder().operation(transaction).timestamp((long) i)
+					.currentBlockHash(previous == null ? null : BlockHasher.hash(previous)).build();
+			chain.append(block);
+			previous = block;
+		}
+		return chain;
+	}
+
+	@Test
+	void acceptsConsistentChainAcrossRanges() {
+		VerificationResultDto result = verifier.verify(chain(50_000, -1), initialBalances);
+
+		assertTrue(result.isValid(), () -> result.getErrors().toString());
+		assertEquals(BigDecimal.TEN, result.getBalances().get("A"));
+	}
+
+	@Test
+	void reportsBrokenHashLink() {
+		ChainStore chain = chain(20_000, -1);
+		chain.getByHeight(12_345).orElseThrow().setCurrentBlockHash(new BlockHash(1, 2, 3, 4));
+
+		VerificationResultDto result = verifier.verify(chain, initialBalances);
+
+		assertFalse(result.isValid());
+		assertEquals("Broken hash link at height 12345", result.getErrors().get(0));
+	}
+
+	@Test
+	void reportsOverdraftInLaterRange() {
+		VerificationResultDto result = verifier.verify(chain(20_000, 17_000), initialBalances);
+
+		assertFalse(result.isValid());
+		assertTrue(result.getErrors().get(0).contains("at height 17000"), () -> result.getErrors().toString());
+	}
+}
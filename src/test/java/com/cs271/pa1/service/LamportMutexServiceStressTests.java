@@ -0,0 +1,164 @@
+package com.cs271.pa1.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.cs271.pa1.dto.LamportMessage;
+import com.cs271.pa1.dto.Request;
+import com.cs271.pa1.proxy.LamportTransport;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+// Mutex services wired directly to each other
+class LamportMutexServiceStressTests {
+	private static final int PROCESSES = 5;
+	private static final int ROUNDS = 400;
+
+	private final Map<String, LamportMutexService> services = new ConcurrentHashMap<>();
+	private final Map<String, ExecutorService> channels = new ConcurrentHashMap<>();
+	private final AtomicLong delivered = new AtomicLong();
+
+	@ParameterizedTest
+	@ValueSource(booleans = { false, true })
+	void concurrentDeliveryKeepsMutualExclusion(boolean coalescing) throws Exception {
+		for (int p = 0; p < PROCESSES; p++) {
+			services.put(String.valueOf(p), newService(String.valueOf(p), coalescing));
+		}
+
+		AtomicInteger inCriticalSection = new AtomicInteger();
+		AtomicInteger maxInCriticalSection = new AtomicInteger();
+		AtomicInteger entries = new AtomicInteger();
+		List<Thread> clients = new ArrayList<>();
+		try {
+			for (LamportMutexService service : services.values()) {
+				Thread client = new Thread(() -> {
+					try {
+						for (int round = 0; round < ROUNDS; round++) {
+							service.requestMutex();
+							assertTrue(service.acquire(10, TimeUnit.SECONDS), "Stalled in round " + round);
+							maxInCriticalSection.accumulateAndGet(inCriticalSection.incrementAndGet(), Math::max);
+							entries.incrementAndGet();
+							inCriticalSection.decrementAndGet();
+							if (coalescing && round + 1 < ROUNDS) {
+								service.releaseBeforeRequest();
+							} else {
+								service.releaseMutex();
+							}
+						}
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				});
+				clients.add(client);
+				client.start();
+			}
+			for (Thread client : clients) {
+				client.join();
+			}
+
+			assertEquals(PROCESSES * ROUNDS, entries.get());
+			assertEquals(1, maxInCriticalSection.get());
+			assertTrue(delivered.get() >= (long) PROCESSES * ROUNDS * (PROCESSES - 1));
+		} finally {
+			channels.values().forEach(ExecutorService::shutdownNow);
+			services.values().forEach(LamportMutexService::stop);
+		}
+	}
+
+	@ParameterizedTest
+	@ValueSource(booleans = { false, true })
+	void requestThatCannotBeSentFailsTheAcquire(boolean coalescing) throws Exception {
+		LamportMutexService service = newService("0", coalescing);
+		ReflectionTestUtils.setField(service, "lamportProxy", new DirectTransport("0") {
+			@Override
+			public void sendRequest(String targetUrl, Request request) {
+				throw new IllegalStateException("Could not queue a message to " + targetUrl);
+			}
+
+			@Override
+			public void sendMessage(String targetUrl, LamportMessage message) {
+				if (message.getRequest() != null) {
+					throw new IllegalStateException("Could not queue a message to " + targetUrl);
+				}
+			}
+		});
+		try {
+			service.requestMutex();
+			long start = System.nanoTime();
+			assertFalse(service.acquire(10, TimeUnit.SECONDS));
+			assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+			service.cancelRequest();
+		} finally {
+			service.stop();
+		}
+	}
+
+	private LamportMutexService newService(String processId, boolean coalescing) {
+		LamportMutexService service = new LamportMutexService();
+		ReflectionTestUtils.setField(service, "processId", processId);
+		ReflectionTestUtils.setField(service, "lamportProxy", new DirectTransport(processId));
+		ReflectionTestUtils.setField(service, "meterRegistry", new SimpleMeterRegistry());
+		ReflectionTestUtils.setField(service, "coalescing", coalescing);
+		ReflectionTestUtils.setField(service, "maxHoldMs", 1L);
+		ReflectionTestUtils.setField(service, "flusher", Executors.newSingleThreadScheduledExecutor());
+		for (int p = 0; p < PROCESSES; p++) {
+			if (!String.valueOf(p).equals(processId)) {
+				service.registerProcess(String.valueOf(p), "http://localhost:" + p);
+			}
+		}
+		return service;
+	}
+
+	private class DirectTransport implements LamportTransport {
+		private final String from;
+
+		DirectTransport(String from) {
+			this.from = from;
+		}
+
+		@Override
+		public void sendRequest(String targetUrl, Request request) {
+			Request copy = Request.of(request.getTimestamp(), request.getProcessId());
+			deliver(targetUrl, target -> target.receiveRequest(copy));
+		}
+
+		@Override
+		public void sendReply(String targetUrl, String processId, long timestamp) {
+			deliver(targetUrl, target -> target.receiveReply(processId, timestamp));
+		}
+
+		@Override
+		public void sendRelease(String targetUrl, String processId, long timestamp) {
+			deliver(targetUrl, target -> target.receiveRelease(processId, timestamp));
+		}
+
+		@Override
+		public void sendMessage(String targetUrl, LamportMessage message) {
+			deliver(targetUrl, target -> target.receiveMessage(message));
+		}
+
+		private void deliver(String targetUrl, Consumer<LamportMutexService> handler) {
+			String to = targetUrl.substring(targetUrl.lastIndexOf(':') + 1);
+			channels.computeIfAbsent(from + "->" + to, k -> Executors.newSingleThreadExecutor()).execute(() -> {
+				handler.accept(services.get(to));
+				delivered.incrementAndGet();
+			});
+		}
+	}
+}
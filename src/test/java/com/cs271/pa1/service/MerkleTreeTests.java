@@ -0,0 +1,76 @@
+package com.cs271.pa1.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.cs271.pa1.dto.BlockDto;
+import com.cs271.pa1.dto.BlockHash;
+import com.cs271.pa1.dto.InclusionProofDto;
+import com.cs271.pa1.dto.TransactionDto;
+
+class MerkleTreeTests {
+
+	private static List<TransactionDto> transactions(int count) {
+		List<TransactionDto> transactions = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			transactions.add(TransactionDto.createTransaction("A", "B", new BigDecimal("0." + (i + 10))));
+		}
+		return transactions;
+	}
+
+	@Test
+	void everyLeafProvesItsWayToTheRootInLogarithmicSteps() {
+		for (int count = 1; count <= 17; count++) {
+			List<TransactionDto> transactions = transactions(count);
+			BlockHash root = MerkleTree.root(transactions);
+			int maxSteps = 32 - Integer.numberOfLeadingZeros(count - 1);
+			for (int i = 0; i < count; i++) {
+				List<InclusionProofDto.Step> path = MerkleTree.proof(transactions, i);
+				assertTrue(path.size() <= maxSteps);
+				assertEquals(root, MerkleTree.rootFromProof(MerkleTree.leaf(transactions.get(i)), path));
+				if (count > 1) {
+					assertNotEquals(root,
+							MerkleTree.rootFromProof(MerkleTree.leaf(transactions.get((i + 1) % count)), path));
+				}
+			}
+		}
+	}
+
+	@Test
+	void rootCommitsToTheExactTransactionList() {
+		List<TransactionDto> transactions = transactions(3);
+		List<TransactionDto> duplicatedTail = new ArrayList<>(transactions);
+		duplicatedTail.add(transactions.get(2));
+		List<TransactionDto> reordered = List.of(transactions.get(1), transactions.get(0), transactions.get(2));
+
+		BlockHash root = MerkleTree.root(transactions);
+		assertNotEquals(root, MerkleTree.root(duplicatedTail));
+		assertNotEquals(root, MerkleTree.root(reordered));
+		// A single transaction's root is its leaf, never an inner node's hash
+		assertEquals(MerkleTree.leaf(transactions.get(0)), MerkleTree.root(transactions.subList(0, 1)));
+	}
+
+	@Test
+	void proofVerifiesAgainstTheHeaderHashAlone() {
+		List<TransactionDto> transactions = transactions(5);
+		BlockDto block = BlockDto.builder().transactions(transactions).merkleRoot(MerkleTree.root(transactions))
+				.timestamp(42L).currentBlockHash(new BlockHash(1, 2, 3, 4)).build();
+		InclusionProofDto proof = InclusionProofDto.builder().transaction(transactions.get(4)).index(4)
+				.transactionCount(5).leafHash(MerkleTree.leaf(transactions.get(4)))
+				.path(MerkleTree.proof(transactions, 4)).merkleRoot(block.getMerkleRoot())
+				.blockTimestamp(block.getTimestamp()).previousBlockHash(block.getCurrentBlockHash())
+				.blockHash(BlockHasher.hash(block)).build();
+		assertTrue(MerkleTree.verify(proof));
+
+		proof.getTransaction().setAmount(new BigDecimal("9.99"));
+		assertFalse(MerkleTree.verify(proof));
+	}
+}
@@ -0,0 +1,63 @@
+package com.cs271.pa1.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.cs271.pa1.dto.Request;
+
+class RequestQueueTests {
+
+	private final RequestQueue queue = new RequestQueue();
+
+	private static Request request(long timestamp, String processId, String... resources) {
+		Request request = Request.of(timestamp, processId);
+		request.setResources(resources.length == 0 ? null : List.of(resources));
+		return request;
+	}
+
+	@Test
+	void ordersByTimestampThenProcessAndIndexesByProcess() {
+		queue.add(request(5, "8081"));
+		queue.add(request(3, "8082"));
+		queue.add(request(3, "8080"));
+		queue.add(request(7, "8082"));
+
+		assertEquals(List.of(request(3, "8080"), request(3, "8082"), request(5, "8081")),
+				queue.before(request(7, "8082")));
+		assertEquals(request(3, "8082"), queue.first("8082"));
+
+		assertTrue(queue.removeProcess("8082"));
+		assertFalse(queue.removeProcess("8082"));
+		assertNull(queue.first("8082"));
+		assertEquals(2, queue.size());
+		assertEquals(List.of(request(3, "8080")), queue.before(request(5, "8081")));
+	}
+
+	@Test
+	void globalRequestsConflictWithAnyEarlierRequest() {
+		Request mine = request(4, "8080");
+		queue.add(mine);
+		assertFalse(queue.hasEarlierConflicting(mine));
+
+		queue.add(request(2, "8081", "C", "D"));
+		assertTrue(queue.hasEarlierConflicting(mine));
+	}
+
+	@Test
+	void accountRequestsOnlyConflictOnSharedAccounts() {
+		Request mine = request(4, "8080", "A", "B");
+		queue.add(mine);
+		queue.add(request(2, "8081", "C", "D"));
+		queue.add(request(6, "8082", "A"));
+		assertFalse(queue.hasEarlierConflicting(mine));
+
+		queue.add(request(3, "8083", "B", "C"));
+		assertTrue(queue.hasEarlierConflicting(mine));
+	}
+}
@@ -0,0 +1,185 @@
+package com.cs271.pa1.store;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.cs271.pa1.dto.BlockDto;
+import com.cs271.pa1.dto.BlockHash;
+import com.cs271.pa1.dto.TransactionDto;
+
+class BlockLogTests {
+
+	@TempDir
+	Path directory;
+
+	// Odd heights are batched blocks, even ones single-operation blocks written before batching
+	private BlockDto block(int i) {
+		TransactionDto tx = TransactionDto.createTransaction("A", "B", new BigDecimal("1." + i));
+		BlockDto block = BlockDto.builder().timestamp((long) i).currentBlockHash(i == 0 ? null : new BlockHash(i, i, i, i))
+				.build();
+		if (i % 2 == 0) {
+			block.setOperation(tx);
+		} else {
+			TransactionDto untimed = TransactionDto.builder().sender("C").receiver("A").amount(BigDecimal.ONE)
+					.transactionId("tx-" + i).build();
+			block.setTransactions(List.of(tx, untimed));
+			block.setMerkleRoot(new BlockHash(i, 0, i, 0));
+		}
+		return block;
+	}
+
+	@Test
+	void replaysAppendedBlocksAcrossSegments() {
+		List<BlockDto> written = new ArrayList<>();
+		BlockLog blockLog = new BlockLog(directory, 1024, true, 0);
+		blockLog.open();
+		blockLog.replay(b -> {
+		});
+		for (int i = 0; i < 100; i++) {
+			BlockDto block = block(i);
+			written.add(block);
+			blockLog.append(block);
+		}
+		blockLog.close();
+
+		List<BlockDto> replayed = new ArrayList<>();
+		BlockLog reopened = new BlockLog(directory, 1024, true, 0);
+		reopened.open();
+		assertEquals(100, reopened.replay(replayed::add));
+		reopened.close();
+		assertEquals(written, replayed);
+	}
+
+	@Test
+	void replaysFromABlockWithoutReadingEarlierRecords() throws Exception {
+		List<BlockDto> written = new ArrayList<>();
+		BlockLog blockLog = new BlockLog(directory, 1024, true, 0);
+		blockLog.open();
+		blockLog.replay(b -> {
+		});
+		for (int i = 0; i < 100; i++) {
+			BlockDto block = block(i);
+			written.add(block);
+			blockLog.append(block);
+		}
+		blockLog.close();
+
+		// A damaged payload before the seek point goes unnoticed, as nothing there is decoded
+		Path first;
+		try (Stream<Path> files = Files.list(directory)) {
+			first = files.sorted().findFirst().orElseThrow();
+		}
+		try (FileChannel channel = FileChannel.open(first, StandardOpenOption.WRITE)) {
+			channel.write(ByteBuffer.wrap(new byte[] { -1, -1 }), 8);
+		}
+
+		List<BlockDto> replayed = new ArrayList<>();
+		BlockLog reopened = new BlockLog(directory, 1024, true, 0);
+		reopened.open();
+		assertEquals(100, reopened.replay(57, replayed::add));
+		reopened.append(block(100));
+		reopened.close();
+		assertEquals(written.subList(57, 100), replayed);
+
+		BlockLog again = new BlockLog(directory, 1024, true, 0);
+		again.open();
+		assertEquals(101, again.replay(100, b -> {
+		}));
+		again.close();
+	}
+
+	@Test
+	void truncatesTornTail() throws Exception {
+		BlockLog blockLog = new BlockLog(directory, 1 << 20, false, 0);
+		blockLog.open();
+		blockLog.replay(b -> {
+		});
+		for (int i = 0; i < 10; i++) {
+			blockLog.append(block(i));
+		}
+		blockLog.close();
+
+		Path segment;
+		try (Stream<Path> files = Files.list(directory)) {
+			segment = files.findFirst().orElseThrow();
+		}
+		try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+			channel.truncate(channel.size() - 3);
+		}
+
+		BlockLog reopened = new BlockLog(directory, 1 << 20, false, 0);
+		reopened.open();
+		assertEquals(9, reopened.replay(b -> {
+		}));
+		reopened.append(block(9));
+		reopened.close();
+
+		BlockLog again = new BlockLog(directory, 1 << 20, false, 0);
+		again.open();
+		assertEquals(10, again.replay(b -> {
+		}));
+		again.close();
+	}
+
+	@Test
+	void appendInterruptedBeforeItsSyncFails() throws Exception {
+		BlockLog blockLog = new BlockLog(directory, 1 << 20, true, 60_000);
+		blockLog.open();
+		blockLog.replay(b -> {
+		});
+		List<Exception> failures = new ArrayList<>();
+		Thread appender = new Thread(() -> {
+			try {
+				blockLog.append(block(0));
+			} catch (UncheckedIOException e) {
+				failures.add(e);
+			}
+		});
+		appender.start();
+		while (appender.getState() != Thread.State.WAITING) {
+			Thread.sleep(1);
+		}
+		appender.interrupt();
+		appender.join();
+		blockLog.close();
+		assertEquals(1, failures.size());
+	}
+
+	// The interrupt closes the channel mid-append; the log drops the partial record and goes on
+	@Test
+	void appendsAfterAnInterruptedWrite() {
+		BlockLog blockLog = new BlockLog(directory, 1 << 20, false, 0);
+		blockLog.open();
+		blockLog.replay(b -> {
+		});
+		List<BlockDto> written = List.of(block(0), block(1));
+		blockLog.append(written.get(0));
+		Thread.currentThread().interrupt();
+		assertThrows(UncheckedIOException.class, () -> blockLog.append(written.get(1)));
+		assertTrue(Thread.interrupted());
+		blockLog.append(written.get(1));
+		blockLog.close();
+
+		List<BlockDto> replayed = new ArrayList<>();
+		BlockLog reopened = new BlockLog(directory, 1 << 20, false, 0);
+		reopened.open();
+		assertEquals(2, reopened.replay(replayed::add));
+		reopened.close();
+		assertEquals(written, replayed);
+	}
+}
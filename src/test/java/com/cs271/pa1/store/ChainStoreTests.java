@@ -0,0 +1,183 @@
+package com.cs271.pa1.store;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.cs271.pa1.dto.BlockDto;
+import com.cs271.pa1.dto.BlockHash;
+import com.cs271.pa1.dto.ColdTierDto;
+import com.cs271.pa1.dto.TransactionDto;
+import com.cs271.pa1.dto.VerificationResultDto;
+import com.cs271.pa1.service.BlockHasher;
+import com.cs271.pa1.service.ChainVerifier;
+import com.cs271.pa1.service.MerkleTree;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class ChainStoreTests {
+	private static final int BLOCKS = 5000;
+
+	@TempDir
+	Path directory;
+
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+	private ColdBlockStore cold;
+
+	@AfterEach
+	void close() {
+		cold.close();
+	}
+
+	// Hash-linked single and batched blocks
+	private List<BlockDto> fill(ChainStore chain, List<BlockDto> blocks, int count) {
+		for (int i = blocks.size(); i < count; i++) {
+			TransactionDto forward = i % 4 == 2 ? TransactionDto.createTransaction("B", "A", new BigDecimal("0.01"))
+					: TransactionDto.createTransaction("A", "B", new BigDecimal("0.01"));
+			BlockDto block = BlockDto.builder().timestamp((long) i).height(i)
+					.currentBlockHash(i == 0 ? null : BlockHasher.hash(blocks.get(i - 1))).build();
+			if (i % 2 == 0) {
+				block.setOperation(forward);
+			} else {
+				List<TransactionDto> batch = List.of(forward,
+						TransactionDto.createTransaction("B", "A", new BigDecimal("0.01")));
+				block.setTransactions(batch);
+				block.setMerkleRoot(MerkleTree.root(batch));
+			}
+			chain.append(block);
+			blocks.add(block);
+		}
+		return blocks;
+	}
+
+	@Test
+	void spillsOldChunksAndReadsThemBackFromDisk() {
+		cold = new ColdBlockStore(directory, 1024, 64, registry);
+		cold.open();
+		ChainStore chain = new ChainStore(cold);
+		List<BlockDto> blocks = fill(chain, new ArrayList<>(), BLOCKS);
+
+		// Spills a chunk once two are hot, so 3 of the 5 chunks are on disk
+		assertEquals(3 * 1024, registry.get("blockchain.cold.blocks").gauge().value());
+		for (int height = 0; height < BLOCKS; height += 97) {
+			assertEquals(blocks.get(height), chain.getByHeight(height).orElseThrow());
+		}
+		assertEquals(blocks.subList(3000, 3200), chain.range(3000, 200));
+
+		BlockDto old = blocks.get(1001);
+		assertEquals(old, chain.getByTransactionId(old.operations().get(1).getTransactionId()).orElseThrow());
+		assertEquals(old, chain.getByHash(blocks.get(1002).getCurrentBlockHash()).orElseThrow());
+		assertTrue(chain.getByHash(new BlockHash(old.getCurrentBlockHash().h0(), 0, 0, 0)).isEmpty());
+		assertEquals(BLOCKS, chain.accountHistorySize("A"));
+		assertEquals(List.of(blocks.get(0)), chain.accountHistory("A", BLOCKS - 1, 10));
+
+		double hits = registry.get("cache.gets").tag("result", "hit").functionCounter().count();
+		chain.getByHeight(1001);
+		assertEquals(hits + 1, registry.get("cache.gets").tag("result", "hit").functionCounter().count());
+	}
+
+	@Test
+	void residentIndexesDoNotGrowWithSpilledChunks() {
+		cold = new ColdBlockStore(directory, 1024, 0, registry);
+		cold.open();
+		ChainStore chain = new ChainStore(cold);
+		List<BlockDto> blocks = fill(chain, new ArrayList<>(), BLOCKS);
+		long bytes = chain.residentIndexBytes();
+		fill(chain, blocks, 4 * BLOCKS);
+
+		// 18 chunks spilled against 3, with the same hot window
+		assertEquals(18 * 1024, registry.get("blockchain.cold.blocks").gauge().value());
+		assertTrue(chain.residentIndexBytes() <= bytes, () -> chain.residentIndexBytes() + " > " + bytes);
+		BlockDto old = blocks.get(1001);
+		assertEquals(old, chain.getByTransactionId(old.operations().get(1).getTransactionId()).orElseThrow());
+		assertEquals(old, chain.getByHash(blocks.get(1002).getCurrentBlockHash()).orElseThrow());
+		assertEquals(4 * BLOCKS, chain.accountHistorySize("B"));
+		// Pages cross from the hot heights into spilled chunks and from one chunk to the next
+		assertEquals(List.of(blocks.get(18 * 1024), blocks.get(18 * 1024 - 1)),
+				chain.accountHistory("B", 4 * BLOCKS - 18 * 1024 - 1, 2));
+		assertEquals(List.of(blocks.get(1024), blocks.get(1023)), chain.accountHistory("B", 4 * BLOCKS - 1025, 2));
+		assertEquals(List.of(blocks.get(0)), chain.accountHistory("B", 4 * BLOCKS - 1, 10));
+	}
+
+	@Test
+	void readsHistoryOfLongAccountNamesFromSpilledChunks() {
+		cold = new ColdBlockStore(directory, 1024, 0, registry);
+		cold.open();
+		ChainStore chain = new ChainStore(cold);
+		String account = "L".repeat(300);
+		List<BlockDto> blocks = new ArrayList<>();
+		for (int i = 0; i < BLOCKS; i++) {
+			BlockDto block = BlockDto.builder().timestamp((long) i).height(i)
+					.currentBlockHash(i == 0 ? null : BlockHasher.hash(blocks.get(i - 1)))
+					.operation(TransactionDto.createTransaction(account, "B", new BigDecimal("0.01"))).build();
+			chain.append(block);
+			blocks.add(block);
+		}
+
+		assertEquals(3 * 1024, registry.get("blockchain.cold.blocks").gauge().value());
+		assertEquals(BLOCKS, chain.accountHistorySize(account));
+		assertEquals(List.of(blocks.get(0)), chain.accountHistory(account, BLOCKS - 1, 10));
+	}
+
+	@Test
+	void restoresARecordedColdTierAndDropsWhatWasSpilledAfterIt() {
+		cold = new ColdBlockStore(directory, 1024, 64, registry);
+		cold.open();
+		ChainStore chain = new ChainStore(cold);
+		List<BlockDto> blocks = fill(chain, new ArrayList<>(), BLOCKS);
+		ColdTierDto tier = chain.coldTier();
+		fill(chain, blocks, 7000);
+		cold.force();
+		cold.close();
+
+		SimpleMeterRegistry restarted = new SimpleMeterRegistry();
+		cold = new ColdBlockStore(directory, 1024, 64, restarted);
+		cold.open();
+		ChainStore restored = new ChainStore(cold);
+		restored.restoreCold(tier);
+		assertEquals(3 * 1024, restored.size());
+		assertEquals(0, restarted.get("cache.gets").tag("result", "miss").functionCounter().count());
+		for (BlockDto block : blocks.subList(3 * 1024, 7000)) {
+			restored.append(block);
+		}
+
+		assertEquals(5 * 1024, restarted.get("blockchain.cold.blocks").gauge().value());
+		assertEquals(5L * 1024, restored.coldTier().getHashKeys());
+		for (int height = 0; height < 7000; height += 97) {
+			assertEquals(blocks.get(height), restored.getByHeight(height).orElseThrow());
+		}
+		for (int height : new int[] { 1001, 4001 }) {
+			BlockDto old = blocks.get(height);
+			assertEquals(old, restored.getByTransactionId(old.operations().get(1).getTransactionId()).orElseThrow());
+			assertEquals(old, restored.getByHash(blocks.get(height + 1).getCurrentBlockHash()).orElseThrow());
+		}
+		assertEquals(7000, restored.accountHistorySize("A"));
+		assertEquals(List.of(blocks.get(0)), restored.accountHistory("A", 6999, 10));
+	}
+
+	@Test
+	void verifiesAcrossColdAndHotRanges() {
+		cold = new ColdBlockStore(directory, 1024, 16, registry);
+		cold.open();
+		ChainStore chain = new ChainStore(cold);
+		fill(chain, new ArrayList<>(), BLOCKS);
+
+		VerificationResultDto result = new ChainVerifier(ForkJoinPool.commonPool()).verify(chain,
+				Map.of("A", BigDecimal.TEN, "B", BigDecimal.TEN));
+
+		assertTrue(result.isValid(), () -> result.getErrors().toString());
+		// Range scans read around the cache
+		assertEquals(0, registry.get("cache.size").gauge().value());
+	}
+}